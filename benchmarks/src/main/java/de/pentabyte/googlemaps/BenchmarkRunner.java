@@ -0,0 +1,34 @@
+package de.pentabyte.googlemaps;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line options
+ * and always attaches the GC profiler, so every result reports allocation per
+ * operation (gc.alloc.rate.norm) next to the throughput.
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		if (cmdOptions.shouldHelp()) {
+			cmdOptions.showHelp();
+			return;
+		}
+		Runner runner = new Runner(new OptionsBuilder() //
+				.parent(cmdOptions) //
+				.addProfiler(GCProfiler.class) //
+				.build());
+		if (cmdOptions.shouldList()) {
+			runner.list();
+		} else {
+			runner.run();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package de.pentabyte.googlemaps;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding a complete track point by point with {@link PolylineEncoder#add} vs.
+ * bulk encoding with a reused encoder.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PolylineEncoderBenchmark {
+	@Param({ "10", "1000", "100000", "1000000" })
+	int points;
+
+	double[] latitudes;
+	double[] longitudes;
+	PolylineEncoder reused = new PolylineEncoder();
+	StringBuilder out = new StringBuilder();
+
+	@Setup
+	public void setup() {
+		List<LatLon> track = Workloads.track(points);
+		latitudes = new double[points];
+		longitudes = new double[points];
+		for (int i = 0; i < points; i++) {
+			latitudes[i] = track.get(i).getLatitude();
+			longitudes[i] = track.get(i).getLongitude();
+		}
+	}
+
+	@Benchmark
+	public String add() {
+		PolylineEncoder encoder = new PolylineEncoder();
+		for (int i = 0; i < latitudes.length; i++) {
+			encoder.add(latitudes[i], longitudes[i]);
+		}
+		return encoder.toString();
+	}
+
+	@Benchmark
+	public int encodeReused() {
+		reused.reset();
+		reused.encode(latitudes, longitudes, 0, latitudes.length);
+		out.setLength(0);
+		reused.writeTo(out);
+		return out.length();
+	}
+}
@@ -0,0 +1,104 @@
+package de.pentabyte.googlemaps;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.pentabyte.googlemaps.StaticMap.Maptype;
+
+/**
+ * {@link StaticMap#toString()} for maps with markers and for maps with a
+ * single path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StaticMapBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class MarkerMap {
+		@Param({ "1", "10", "100", "500" })
+		int markers;
+
+		@Param({ "coordinates", "geocoded" })
+		String locations;
+
+		StaticMap map;
+
+		@Setup
+		public void setup() {
+			map = new StaticMap(640, 480, "benchmark-key");
+			map.setMaptype(Maptype.roadmap);
+			map.setCenter(new Location("Paris"), 10);
+			// Google geocodes at most 15 locations, setMarkers() refuses more
+			map.setMarkers(Workloads.markers(markers, "geocoded".equals(locations)));
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class PathMap {
+		@Param({ "10", "1000", "100000", "1000000" })
+		int points;
+
+		@Param({ "list", "packed" })
+		String storage;
+
+		List<LatLon> track;
+		PackedCoordinates packed;
+
+		@Setup
+		public void setup() {
+			track = Workloads.track(points);
+			packed = PackedCoordinates.of(track);
+		}
+
+		/**
+		 * A fresh map and path, so no cached results will be used.
+		 */
+		StaticMap newMap() {
+			StaticPath path = "list".equals(storage) ? new StaticPath(track) : new StaticPath(packed);
+			path.setColor(Color.red);
+			path.setWeight(3);
+			StaticMap map = new StaticMap(640, 480, "benchmark-key");
+			map.addPath(path);
+			return map;
+		}
+	}
+
+	/**
+	 * Rendering without the URL cache.
+	 */
+	@Benchmark
+	public String markers(MarkerMap state) throws IOException {
+		StringBuilder url = new StringBuilder(256);
+		state.map.render(url, new RenderScratch());
+		return url.toString();
+	}
+
+	/**
+	 * Repeated toString() of an unchanged map.
+	 */
+	@Benchmark
+	public String markersCached(MarkerMap state) {
+		return state.map.toString();
+	}
+
+	@Benchmark
+	public String path(PathMap state) {
+		return state.newMap().toString();
+	}
+}
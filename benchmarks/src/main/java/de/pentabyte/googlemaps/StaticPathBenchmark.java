@@ -0,0 +1,57 @@
+package de.pentabyte.googlemaps;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link StaticPath#formatFor(double, int)} with the parameters
+ * {@link StaticMap} would use for a 640x480 map.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StaticPathBenchmark {
+	@Param({ "10", "1000", "100000", "1000000" })
+	int points;
+
+	/**
+	 * 0: no distance filtering, only point reduction.
+	 */
+	@Param({ "0", "5", "50" })
+	double minDistanceMeters;
+
+	@Param({ "douglas-peucker", "visvalingam-whyatt" })
+	String simplifier;
+
+	List<LatLon> track;
+
+	@Setup
+	public void setup() {
+		track = Workloads.track(points);
+	}
+
+	@Benchmark
+	public String formatFor() {
+		// a fresh path, so no cached results will be used
+		StaticPath path = new StaticPath(track);
+		path.setColor(Color.blue);
+		path.setSimplifier("douglas-peucker".equals(simplifier) ? new DouglasPeuckerSimplifier()
+				: new VisvalingamWhyattSimplifier());
+		return path.formatFor(minDistanceMeters, 40);
+	}
+}
@@ -0,0 +1,61 @@
+package de.pentabyte.googlemaps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic test data for the benchmarks.
+ */
+final class Workloads {
+	private static final String[] CITIES = { "London", "Paris", "Brüssel", "Berlin", "Madrid", "München", "Rom",
+			"Prag", "Wien", "Hamburg", "New York", "Amsterdam", "Dublin", "Montpellier", "Bern" };
+
+	private Workloads() {
+	}
+
+	/**
+	 * A GPS-like track: a random walk with roughly 5 meters between
+	 * consecutive fixes, starting in Cologne.
+	 */
+	static List<LatLon> track(int points) {
+		Random random = new Random(points);
+		List<LatLon> coords = new ArrayList<>(points);
+		double lat = 50.9375;
+		double lon = 6.9603;
+		double heading = 0;
+		for (int i = 0; i < points; i++) {
+			coords.add(new LatLonImpl(lat, lon));
+			heading += random.nextGaussian() * 0.2;
+			lat += Math.cos(heading) * 0.000045;
+			lon += Math.sin(heading) * 0.00007;
+		}
+		return coords;
+	}
+
+	/**
+	 * @param geocoded
+	 *            true: the first {@value StaticMap#MAX_GEOCODED_LOCATIONS}
+	 *            markers carry a query string which Google has to geocode,
+	 *            the others coordinates. false: all markers carry
+	 *            coordinates.
+	 */
+	static List<StaticMarker> markers(int count, boolean geocoded) {
+		Random random = new Random(count);
+		List<StaticMarker> markers = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			StaticMarker marker;
+			if (geocoded && i < StaticMap.MAX_GEOCODED_LOCATIONS) {
+				marker = new StaticMarker(CITIES[i % CITIES.length] + " " + i);
+			} else {
+				marker = new StaticMarker(48 + random.nextDouble() * 4, 2 + random.nextDouble() * 10);
+			}
+			if (i % 3 == 0) {
+				marker.setColor(Color.values()[i % Color.values().length]);
+				marker.setLabel((char) ('A' + i % 26));
+			}
+			markers.add(marker);
+		}
+		return markers;
+	}
+}
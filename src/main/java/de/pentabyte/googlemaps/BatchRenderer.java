@@ -0,0 +1,91 @@
+package de.pentabyte.googlemaps;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Renders the URLs of many maps in parallel. Every worker thread keeps its own
+ * working memory (polyline encoder, buffers), so rendering allocates little
+ * more than the resulting Strings.
+ * 
+ * Results are delivered in input order. At most maxInFlight maps are rendered
+ * or waiting for delivery at any time: reading the input pauses until the
+ * oldest URL has been delivered, so memory stays bounded for jobs of any size.
+ */
+public class BatchRenderer {
+	private static final ThreadLocal<RenderScratch> SCRATCH = ThreadLocal.withInitial(RenderScratch::new);
+
+	private final Executor executor;
+	private final int maxInFlight;
+
+	/**
+	 * Renders on the common {@link ForkJoinPool}.
+	 */
+	public BatchRenderer() {
+		this(ForkJoinPool.commonPool(), 64 * ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	/**
+	 * @param executor    renders the maps
+	 * @param maxInFlight maximum number of maps being rendered or waiting for
+	 *                    delivery
+	 */
+	public BatchRenderer(Executor executor, int maxInFlight) {
+		if (maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be positive");
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * @return URLs in the order of the given maps
+	 */
+	public List<String> render(Collection<StaticMap> maps) {
+		List<String> urls = new ArrayList<>(maps.size());
+		render(maps.iterator(), urls::add);
+		return urls;
+	}
+
+	/**
+	 * @param sink receives the URLs in the order of the given maps, always on
+	 *             the calling thread
+	 */
+	public void render(Stream<StaticMap> maps, Consumer<String> sink) {
+		render(maps.iterator(), sink);
+	}
+
+	/**
+	 * @param sink receives the URLs in the order of the given maps, always on
+	 *             the calling thread
+	 */
+	public void render(Iterator<StaticMap> maps, Consumer<String> sink) {
+		ArrayDeque<CompletableFuture<String>> inFlight = new ArrayDeque<>(Math.min(maxInFlight, 1024));
+		while (maps.hasNext()) {
+			if (inFlight.size() >= maxInFlight)
+				sink.accept(join(inFlight.poll()));
+			StaticMap map = maps.next();
+			inFlight.add(CompletableFuture.supplyAsync(() -> map.toString(SCRATCH.get()), executor));
+		}
+		while (!inFlight.isEmpty())
+			sink.accept(join(inFlight.poll()));
+	}
+
+	private static String join(CompletableFuture<String> url) {
+		try {
+			return url.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package de.pentabyte.googlemaps;
+
+/**
+ * A geographic rectangle
+ */
+final class BoundingBox {
+	private double latMin = Double.POSITIVE_INFINITY;
+	private double latMax = Double.NEGATIVE_INFINITY;
+	private double lonMin = Double.POSITIVE_INFINITY;
+	private double lonMax = Double.NEGATIVE_INFINITY;
+	/**
+	 * smallest non-negative and largest negative longitude: the box's edges,
+	 * if it crosses the antimeridian
+	 */
+	private double lonMinEast = Double.POSITIVE_INFINITY;
+	private double lonMaxWest = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * empty, see {@link #add(double, double)}
+	 */
+	BoundingBox() {
+	}
+
+	BoundingBox(PackedCoordinates coords) {
+		double[] latitudes = coords.latitudes();
+		double[] longitudes = coords.longitudes();
+		for (int i = 0; i < coords.size(); i++) {
+			add(latitudes[i], longitudes[i]);
+		}
+	}
+
+	/**
+	 * Extends the box to include the given coordinate.
+	 */
+	void add(double latitude, double longitude) {
+		if (latitude > latMax)
+			latMax = latitude;
+		if (latitude < latMin)
+			latMin = latitude;
+		if (longitude > lonMax)
+			lonMax = longitude;
+		if (longitude < lonMin)
+			lonMin = longitude;
+		if (longitude >= 0 && longitude < lonMinEast)
+			lonMinEast = longitude;
+		if (longitude < 0 && longitude > lonMaxWest)
+			lonMaxWest = longitude;
+	}
+
+	boolean isEmpty() {
+		return latMin > latMax;
+	}
+
+	double getLatMin() {
+		return latMin;
+	}
+
+	double getLatMax() {
+		return latMax;
+	}
+
+	double getLonMin() {
+		return lonMin;
+	}
+
+	double getLonMax() {
+		return lonMax;
+	}
+
+	/**
+	 * @return degrees of longitude covered: the shorter of the direct span and
+	 *         the span across the antimeridian
+	 */
+	double getLonSpan() {
+		return Math.min(lonMax - lonMin, wrappedLonSpan());
+	}
+
+	/**
+	 * @return infinite, if the box has no longitudes on one side of the prime
+	 *         meridian
+	 */
+	private double wrappedLonSpan() {
+		if (Double.isInfinite(lonMaxWest) || Double.isInfinite(lonMinEast))
+			return Double.POSITIVE_INFINITY;
+		return lonMaxWest + 360 - lonMinEast;
+	}
+
+	/**
+	 * @return center of {@link #getLonSpan()}, within [-180, 180]
+	 */
+	double getCenterLongitude() {
+		if (lonMax - lonMin <= wrappedLonSpan())
+			return (lonMin + lonMax) / 2;
+		double center = (lonMinEast + lonMaxWest + 360) / 2;
+		return center > 180 ? center - 360 : center;
+	}
+
+	/**
+	 * Extends the box to include the given box.
+	 */
+	void add(BoundingBox box) {
+		if (!box.isEmpty()) {
+			add(box.latMin, box.lonMin);
+			add(box.latMax, box.lonMax);
+			lonMinEast = Math.min(lonMinEast, box.lonMinEast);
+			lonMaxWest = Math.max(lonMaxWest, box.lonMaxWest);
+		}
+	}
+}
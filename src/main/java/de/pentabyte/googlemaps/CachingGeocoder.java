@@ -0,0 +1,177 @@
+package de.pentabyte.googlemaps;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the results of another {@link Geocoder}, including unknown
+ * queries. Queries differing only in case or whitespace share an entry.
+ * Thread safe without locking: concurrent lookups of the same query share one
+ * request, the oldest entries are dropped once maxEntries is exceeded.
+ * Failures are not cached.
+ * 
+ * The cache can be saved to and loaded from a file (UTF-8, one tab separated
+ * query, latitude and longitude per line).
+ */
+public class CachingGeocoder implements Geocoder {
+	private static final LatLon NOT_FOUND = new LatLonImpl(Double.NaN, Double.NaN);
+
+	private final Geocoder delegate;
+	private final int maxEntries;
+	private final ConcurrentHashMap<String, CompletableFuture<LatLon>> cache = new ConcurrentHashMap<>();
+	/**
+	 * eviction order, may contain entries which have been removed or replaced
+	 * already
+	 */
+	private final ConcurrentLinkedQueue<Map.Entry<String, CompletableFuture<LatLon>>> insertionOrder = new ConcurrentLinkedQueue<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param maxEntries number of queries to remember
+	 */
+	public CachingGeocoder(Geocoder delegate, int maxEntries) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("maxEntries must be positive");
+		this.delegate = delegate;
+		this.maxEntries = maxEntries;
+	}
+
+	@Override
+	public LatLon geocode(String query) throws IOException {
+		String key = normalize(query);
+		CompletableFuture<LatLon> result = cache.get(key);
+		if (result == null) {
+			CompletableFuture<LatLon> lookup = new CompletableFuture<>();
+			result = cache.putIfAbsent(key, lookup);
+			if (result == null) {
+				misses.increment();
+				LatLon coordinate;
+				try {
+					coordinate = delegate.geocode(query);
+				} catch (Throwable e) {
+					cache.remove(key, lookup);
+					lookup.completeExceptionally(e);
+					throw e;
+				}
+				lookup.complete(coordinate != null ? coordinate : NOT_FOUND);
+				added(key, lookup);
+				return coordinate;
+			}
+		}
+		hits.increment();
+		LatLon coordinate = await(result);
+		return coordinate != NOT_FOUND ? coordinate : null;
+	}
+
+	private static LatLon await(CompletableFuture<LatLon> result) throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for geocoding");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private void added(String key, CompletableFuture<LatLon> result) {
+		insertionOrder.add(new SimpleImmutableEntry<>(key, result));
+		while (cache.size() > maxEntries) {
+			Map.Entry<String, CompletableFuture<LatLon>> eldest = insertionOrder.poll();
+			if (eldest == null)
+				break;
+			// no-op if the key has been added again since
+			cache.remove(eldest.getKey(), eldest.getValue());
+		}
+	}
+
+	static String normalize(String query) {
+		return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return lookups answered by the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return lookups passed to the delegate
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Writes all resolved entries (unknown queries will be asked again after
+	 * loading). The file is replaced atomically.
+	 */
+	public void save(Path file) throws IOException {
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".part");
+		try {
+			try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, CompletableFuture<LatLon>> entry : cache.entrySet()) {
+					LatLon coordinate = entry.getValue().getNow(null);
+					if (coordinate == null || coordinate == NOT_FOUND || entry.getValue().isCompletedExceptionally())
+						continue;
+					out.append(entry.getKey()).append('\t').append(Double.toString(coordinate.getLatitude()))
+							.append('\t').append(Double.toString(coordinate.getLongitude()));
+					out.newLine();
+				}
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Adds the entries of a file written by {@link #save(Path)}. Entries
+	 * already cached are kept.
+	 * 
+	 * @throws IllegalArgumentException if the file is malformed
+	 */
+	public void load(Path file) throws IOException {
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+				String[] fields = line.split("\t");
+				if (fields.length != 3)
+					throw new IllegalArgumentException("malformed geocoder cache line: " + line);
+				LatLon coordinate = new LatLonImpl(Double.parseDouble(fields[1]), Double.parseDouble(fields[2]));
+				CompletableFuture<LatLon> result = CompletableFuture.completedFuture(coordinate);
+				if (cache.putIfAbsent(fields[0], result) == null)
+					added(fields[0], result);
+			}
+		}
+	}
+}
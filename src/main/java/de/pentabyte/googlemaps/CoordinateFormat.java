@@ -0,0 +1,66 @@
+package de.pentabyte.googlemaps;
+
+import java.io.IOException;
+
+/**
+ * Writes degrees with a fixed number of decimals, trailing zeros dropped. No
+ * exponent notation and no temporary Strings, unlike
+ * {@link Float#toString(float)}.
+ */
+final class CoordinateFormat {
+	/**
+	 * about 10 cm
+	 */
+	static final int MAX_DECIMALS = 6;
+	private static final long[] POW10 = { 1, 10, 100, 1000, 10000, 100000, 1000000 };
+
+	private CoordinateFormat() {
+	}
+
+	/**
+	 * @param decimals 0 to {@link #MAX_DECIMALS}
+	 */
+	static void write(Appendable out, double degrees, int decimals) throws IOException {
+		long scaled = Math.round(degrees * POW10[decimals]);
+		if (scaled < 0) {
+			out.append('-');
+			scaled = -scaled;
+		}
+		writeDigits(out, scaled / POW10[decimals], 1);
+
+		long fraction = scaled % POW10[decimals];
+		if (fraction != 0) {
+			int digits = decimals;
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				digits--;
+			}
+			out.append('.');
+			writeDigits(out, fraction, digits);
+		}
+	}
+
+	/**
+	 * @param minDigits leading zeros are written up to this number of digits
+	 */
+	private static void writeDigits(Appendable out, long value, int minDigits) throws IOException {
+		long divisor = 1;
+		for (int digits = 1; digits < minDigits || value / divisor >= 10; digits++)
+			divisor *= 10;
+		for (; divisor > 0; divisor /= 10)
+			out.append((char) ('0' + value / divisor % 10));
+	}
+
+	/**
+	 * @return the fewest decimals which keep the rounding error below half a
+	 *         pixel. One decimal more than the equator needs: a pixel spans
+	 *         fewer degrees of latitude towards the poles (a tenth at 84°).
+	 */
+	static int decimalsFor(int zoom, int scale) {
+		double degreesPerPixel = 360 / WebMercator.worldSize(zoom) / scale;
+		int decimals = 0;
+		while (decimals < MAX_DECIMALS && 1.0 / POW10[decimals] > degreesPerPixel / 10)
+			decimals++;
+		return decimals;
+	}
+}
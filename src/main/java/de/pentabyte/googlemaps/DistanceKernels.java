@@ -0,0 +1,80 @@
+package de.pentabyte.googlemaps;
+
+/**
+ * Distance computations over coordinate arrays, without per-pair
+ * trigonometry: distances are equirectangular approximations, compared
+ * squared and in degrees, so the inner loops only add and multiply.
+ */
+final class DistanceKernels {
+	/**
+	 * length of one degree of latitude
+	 */
+	static final double METERS_PER_DEGREE = Math.toRadians(1) * StaticPath.EARTH_RADIUS;
+
+	private DistanceKernels() {
+	}
+
+	/**
+	 * @return longitude difference wrapped into [-180, 180]
+	 */
+	static double deltaLongitude(double lon1, double lon2) {
+		double dLon = lon2 - lon1;
+		if (dLon > 180)
+			dLon -= 360;
+		else if (dLon < -180)
+			dLon += 360;
+		return dLon;
+	}
+
+	/**
+	 * Copies the first point, every point further than minDistanceMeters away
+	 * from the point copied before it and the last point (unless it is
+	 * identical to the point copied before it).
+	 * 
+	 * cos(latitude) is computed once per copied point and reused for all of
+	 * its successors. The relative error this adds is about tan(latitude) *
+	 * half the latitude difference (in radians) - negligible for the short
+	 * distances filtering is about.
+	 * 
+	 * @param minDistanceMeters 0: only identical successive points are dropped
+	 * @return number of points copied to keptLatitudes and keptLongitudes
+	 *         (which may be the input arrays)
+	 */
+	static int filterByDistance(double[] latitudes, double[] longitudes, int count, double minDistanceMeters,
+			double[] keptLatitudes, double[] keptLongitudes) {
+		if (count == 0)
+			return 0;
+		double threshold = minDistanceMeters / METERS_PER_DEGREE;
+		threshold *= threshold;
+
+		double lastLat = latitudes[0];
+		double lastLon = longitudes[0];
+		double lastCos = Math.cos(Math.toRadians(lastLat));
+		keptLatitudes[0] = lastLat;
+		keptLongitudes[0] = lastLon;
+		int kept = 1;
+		for (int i = 1; i < count; i++) {
+			double lat = latitudes[i];
+			double lon = longitudes[i];
+			double y = lat - lastLat;
+			double x = deltaLongitude(lastLon, lon) * lastCos;
+			if (x * x + y * y > threshold) {
+				keptLatitudes[kept] = lat;
+				keptLongitudes[kept] = lon;
+				kept++;
+				lastLat = lat;
+				lastLon = lon;
+				lastCos = Math.cos(Math.toRadians(lat));
+			}
+		}
+		// the path must not end early
+		double lat = latitudes[count - 1];
+		double lon = longitudes[count - 1];
+		if (lat != lastLat || lon != lastLon) {
+			keptLatitudes[kept] = lat;
+			keptLongitudes[kept] = lon;
+			kept++;
+		}
+		return kept;
+	}
+}
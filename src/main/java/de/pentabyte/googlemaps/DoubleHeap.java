@@ -0,0 +1,111 @@
+package de.pentabyte.googlemaps;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int ids (0 to capacity - 1) with double keys. Keys of
+ * queued ids can be changed. No boxing, no allocation after construction.
+ */
+final class DoubleHeap {
+	private final int[] heap;
+	/**
+	 * position of an id within {@link #heap}, -1 if not queued
+	 */
+	private final int[] positions;
+	private final double[] keys;
+	private int size;
+
+	DoubleHeap(int capacity) {
+		heap = new int[capacity];
+		positions = new int[capacity];
+		keys = new double[capacity];
+		Arrays.fill(positions, -1);
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	boolean contains(int id) {
+		return positions[id] >= 0;
+	}
+
+	double key(int id) {
+		return keys[id];
+	}
+
+	int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Queues the id or changes its key, if already queued.
+	 */
+	void put(int id, double key) {
+		if (positions[id] < 0) {
+			keys[id] = key;
+			heap[size] = id;
+			positions[id] = size;
+			siftUp(size++);
+		} else {
+			double old = keys[id];
+			keys[id] = key;
+			if (key < old)
+				siftUp(positions[id]);
+			else
+				siftDown(positions[id]);
+		}
+	}
+
+	/**
+	 * @return the id with the smallest key
+	 */
+	int poll() {
+		int id = heap[0];
+		positions[id] = -1;
+		if (--size > 0) {
+			heap[0] = heap[size];
+			positions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return id;
+	}
+
+	private void siftUp(int pos) {
+		int id = heap[pos];
+		double key = keys[id];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (keys[heap[parent]] <= key)
+				break;
+			move(heap[parent], pos);
+			pos = parent;
+		}
+		move(id, pos);
+	}
+
+	private void siftDown(int pos) {
+		int id = heap[pos];
+		double key = keys[id];
+		int half = size >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+				child++;
+			if (key <= keys[heap[child]])
+				break;
+			move(heap[child], pos);
+			pos = child;
+		}
+		move(id, pos);
+	}
+
+	private void move(int id, int pos) {
+		heap[pos] = id;
+		positions[id] = pos;
+	}
+}
@@ -0,0 +1,84 @@
+package de.pentabyte.googlemaps;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Ramer-Douglas-Peucker: Starting with the first and the last point, the point
+ * farthest away from the current approximation is added next. Segments are
+ * refined in order of their maximum deviation (priority queue), so the ranking
+ * is sorted by the error each point removes. Typically O(n log n).
+ *
+ * The default simplifier of {@link StaticPath}.
+ */
+public class DouglasPeuckerSimplifier implements PathSimplifier, Serializable {
+	private static final long serialVersionUID = 4518405271593622012L;
+
+	@Override
+	public int[] rank(double[] latitudes, double[] longitudes, int count, double toleranceMeters) {
+		if (count <= 2)
+			return count == 2 ? new int[] { 0, 1 } : new int[count];
+
+		Refinement refinement = new Refinement(EquirectangularProjection.project(latitudes, longitudes, count),
+				count, toleranceMeters);
+
+		int[] ranking = new int[count];
+		int ranked = 0;
+		ranking[ranked++] = 0;
+		ranking[ranked++] = count - 1;
+
+		refinement.queue(0, count - 1);
+		while (!refinement.segments.isEmpty()) {
+			int segment = refinement.segments.poll();
+			int far = refinement.farthest[segment];
+			ranking[ranked++] = far;
+			refinement.queue(refinement.starts[segment], far);
+			refinement.queue(far, refinement.ends[segment]);
+		}
+
+		return ranked == count ? ranking : Arrays.copyOf(ranking, ranked);
+	}
+
+	/**
+	 * Segments waiting to be split, largest deviation first. Every queued
+	 * segment will be split by a different point, so there can never be more
+	 * than count segments.
+	 */
+	private static final class Refinement {
+		private final double[] xy;
+		private final double toleranceSquared;
+		private final int[] starts;
+		private final int[] ends;
+		private final int[] farthest;
+		private final DoubleHeap segments;
+		private int size;
+
+		Refinement(double[] xy, int count, double toleranceMeters) {
+			this.xy = xy;
+			this.toleranceSquared = toleranceMeters * toleranceMeters;
+			this.starts = new int[count];
+			this.ends = new int[count];
+			this.farthest = new int[count];
+			this.segments = new DoubleHeap(count);
+		}
+
+		void queue(int start, int end) {
+			double maxDistance = toleranceSquared;
+			int far = -1;
+			for (int p = start + 1; p < end; p++) {
+				double distance = EquirectangularProjection.segmentDistanceSquared(xy, p, start, end);
+				if (distance > maxDistance) {
+					maxDistance = distance;
+					far = p;
+				}
+			}
+			if (far >= 0) {
+				starts[size] = start;
+				ends[size] = end;
+				farthest[size] = far;
+				// min-heap: negated to get the largest deviation first
+				segments.put(size++, -maxDistance);
+			}
+		}
+	}
+}
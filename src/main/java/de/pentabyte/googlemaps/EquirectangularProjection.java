@@ -0,0 +1,66 @@
+package de.pentabyte.googlemaps;
+
+/**
+ * Projects coordinates onto a plane (meters), which is accurate enough for
+ * measuring shape deviations of paths which do not span continents.
+ */
+final class EquirectangularProjection {
+	private EquirectangularProjection() {
+	}
+
+	/**
+	 * @return x (east) and y (north) in meters relative to the first point,
+	 *         interleaved: x0, y0, x1, y1, ... Longitudes are unwrapped, so a
+	 *         path crossing the antimeridian stays continuous.
+	 */
+	static double[] project(double[] latitudes, double[] longitudes, int count) {
+		double[] xy = new double[2 * count];
+		if (count == 0)
+			return xy;
+
+		double lat0 = latitudes[0];
+		double lon0 = longitudes[0];
+		double metersPerRadianX = Math.cos(Math.toRadians(lat0)) * StaticPath.EARTH_RADIUS;
+		double previousLon = lon0;
+		double unwrappedLon = lon0;
+		for (int i = 0; i < count; i++) {
+			double dLon = longitudes[i] - previousLon;
+			if (dLon > 180)
+				dLon -= 360;
+			else if (dLon < -180)
+				dLon += 360;
+			unwrappedLon += dLon;
+			previousLon = longitudes[i];
+
+			xy[2 * i] = Math.toRadians(unwrappedLon - lon0) * metersPerRadianX;
+			xy[2 * i + 1] = Math.toRadians(latitudes[i] - lat0) * StaticPath.EARTH_RADIUS;
+		}
+		return xy;
+	}
+
+	/**
+	 * @return squared distance (m²) of point p to the segment a-b. All indices
+	 *         refer to the result of {@link #project(double[], double[], int)}.
+	 */
+	static double segmentDistanceSquared(double[] xy, int p, int a, int b) {
+		double ax = xy[2 * a], ay = xy[2 * a + 1];
+		double dx = xy[2 * b] - ax, dy = xy[2 * b + 1] - ay;
+		double px = xy[2 * p] - ax, py = xy[2 * p + 1] - ay;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0 : (px * dx + py * dy) / lengthSquared;
+		if (t < 0)
+			t = 0;
+		else if (t > 1)
+			t = 1;
+		double ex = px - t * dx, ey = py - t * dy;
+		return ex * ex + ey * ey;
+	}
+
+	/**
+	 * @return area (m²) of the triangle a-b-c
+	 */
+	static double triangleArea(double[] xy, int a, int b, int c) {
+		double ax = xy[2 * a], ay = xy[2 * a + 1];
+		return Math.abs((xy[2 * b] - ax) * (xy[2 * c + 1] - ay) - (xy[2 * c] - ax) * (xy[2 * b + 1] - ay)) / 2;
+	}
+}
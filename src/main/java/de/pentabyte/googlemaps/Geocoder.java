@@ -0,0 +1,17 @@
+package de.pentabyte.googlemaps;
+
+import java.io.IOException;
+
+/**
+ * Resolves textual locations to coordinates before a map is rendered (see
+ * {@link StaticMap#geocode(Geocoder)}), so Google does not have to geocode them
+ * for every image. Wrap implementations in a {@link CachingGeocoder}.
+ */
+public interface Geocoder {
+	/**
+	 * @param query anything a {@link Location#Location(String)} may contain
+	 * @return null, if the query cannot be resolved
+	 * @throws IOException if the geocoding service fails
+	 */
+	LatLon geocode(String query) throws IOException;
+}
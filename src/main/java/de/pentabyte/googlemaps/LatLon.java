@@ -4,7 +4,7 @@
 package de.pentabyte.googlemaps;
 
 /**
- * Only needed for {@link StaticPath}
+ * Used by {@link StaticPath} and {@link Geocoder}
  * 
  * @author michael hoereth
  */
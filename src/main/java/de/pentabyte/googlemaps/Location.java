@@ -1,5 +1,7 @@
 package de.pentabyte.googlemaps;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /**
@@ -10,9 +12,15 @@ import java.io.Serializable;
 public class Location implements Serializable {
 	private static final long serialVersionUID = -2890131634409376834L;
 	/**
-	 * what will be sent to Google
+	 * what will be sent to Google. null for coordinates: they are formatted
+	 * while the URL is written, see {@link CoordinateFormat}.
 	 */
 	private final String query;
+	/**
+	 * NaN, if the location is a geocoding query. Not final, see
+	 * {@link #readObject(ObjectInputStream)}.
+	 */
+	private double latitude, longitude;
 	/**
 	 * just a note to keep track of those locations which will trigger geocoding at
 	 * Google
@@ -24,6 +32,8 @@ public class Location implements Serializable {
 	 */
 	public Location(String query) {
 		this.query = query;
+		this.latitude = Double.NaN;
+		this.longitude = Double.NaN;
 		this.geocodingRequired = true;
 	}
 
@@ -31,14 +41,90 @@ public class Location implements Serializable {
 	 * Will create a location which will not require geocoding.
 	 */
 	public Location(double latitude, double longitude) {
-		this((float) latitude + "," + (float) longitude);
+		this.query = null;
+		this.latitude = latitude;
+		this.longitude = longitude;
 		this.geocodingRequired = false;
 	}
 
+	/**
+	 * Locations serialized before version 2.3.1 have no latitude and longitude
+	 * (0 after deserialization) and keep coordinates in their query.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (query != null) {
+			latitude = Double.NaN;
+			longitude = Double.NaN;
+		}
+	}
+
 	protected boolean isGeocodingRequired() {
 		return geocodingRequired;
 	}
 
+	/**
+	 * @return what will be sent to Google (without any style)
+	 */
+	String query() {
+		if (query != null)
+			return query;
+		StringBuilder s = new StringBuilder(24);
+		try {
+			writeLocationTo(s, false, CoordinateFormat.MAX_DECIMALS);
+		} catch (IOException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+		return s.toString();
+	}
+
+	/**
+	 * @return NaN, if Google has to geocode the location
+	 */
+	double latitude() {
+		return latitude;
+	}
+
+	/**
+	 * @return NaN, if Google has to geocode the location
+	 */
+	double longitude() {
+		return longitude;
+	}
+
+	/**
+	 * @return modification counter, lets {@link StaticMap} detect changes.
+	 *         Locations are immutable.
+	 */
+	int modCount() {
+		return 0;
+	}
+
+	/**
+	 * Writes what will be sent to Google, coordinates with 6 decimals.
+	 */
+	protected void writeTo(Appendable out) throws IOException {
+		writeLocationTo(out, false, CoordinateFormat.MAX_DECIMALS);
+	}
+
+	/**
+	 * Writes the location only, without any style a subclass may add.
+	 * 
+	 * @param canonical queries without redundant whitespace, see
+	 *                  {@link StaticMap#setCanonical(boolean)}
+	 * @param decimals  for coordinates, see
+	 *                  {@link StaticMap#setCoordinateDecimals(int)}
+	 */
+	final void writeLocationTo(Appendable out, boolean canonical, int decimals) throws IOException {
+		if (query != null) {
+			out.append(canonical ? query.trim().replaceAll("\\s+", " ") : query);
+		} else {
+			CoordinateFormat.write(out, latitude, decimals);
+			out.append(',');
+			CoordinateFormat.write(out, longitude, decimals);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -46,6 +132,6 @@ public class Location implements Serializable {
 	 */
 	@Override
 	public String toString() {
-		return query;
+		return query();
 	}
 }
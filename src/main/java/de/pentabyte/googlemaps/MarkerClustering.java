@@ -0,0 +1,144 @@
+package de.pentabyte.googlemaps;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges markers which are close to each other on the map, when there are too
+ * many to fit into the URL (see {@link StaticMap#setMarkerClustering}).
+ * Markers are grouped by a grid in Web Mercator points at the map's zoom: each
+ * grid cell with several markers becomes a single cluster marker at their
+ * centroid, labeled with their number (if below 10). Markers alone in their
+ * cell and markers without coordinates are kept as they are. The grid gets
+ * coarser until the markers fit.
+ */
+public class MarkerClustering implements Serializable {
+	private static final long serialVersionUID = 4172086403187435337L;
+	private int cellSize = 32;
+	private Color color;
+	private boolean countLabels = true;
+	private transient int modCount;
+
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Default: 32.
+	 * 
+	 * @param cellSize points, grid used for the first attempt
+	 */
+	public void setCellSize(int cellSize) {
+		if (cellSize < 1)
+			throw new IllegalArgumentException("cellSize must be positive");
+		this.cellSize = cellSize;
+		modCount++;
+	}
+
+	public Color getColor() {
+		return color;
+	}
+
+	/**
+	 * Default: Google's default marker color.
+	 * 
+	 * @param color of the cluster markers
+	 */
+	public void setColor(Color color) {
+		this.color = color;
+		modCount++;
+	}
+
+	public boolean isCountLabels() {
+		return countLabels;
+	}
+
+	/**
+	 * Default: true.
+	 * 
+	 * @param countLabels label cluster markers with the number of their markers
+	 *                    (2-9)
+	 */
+	public void setCountLabels(boolean countLabels) {
+		this.countLabels = countLabels;
+		modCount++;
+	}
+
+	/**
+	 * @return modification counter, lets {@link StaticMap} detect changes.
+	 */
+	int modCount() {
+		return modCount;
+	}
+
+	private static final class Cell {
+		final StaticMarker first;
+		int count;
+		/**
+		 * longitudes relative to first's, so cells at the antimeridian are not
+		 * averaged across the whole map
+		 */
+		double latitudes, deltaLongitudes;
+		boolean emitted;
+
+		Cell(StaticMarker first) {
+			this.first = first;
+		}
+	}
+
+	/**
+	 * Linear time.
+	 * 
+	 * @param zoom     the map's zoom
+	 * @param cellSize points
+	 * @return the markers in their original order, each cluster at the
+	 *         position of its first marker.
+	 */
+	List<StaticMarker> cluster(List<StaticMarker> markers, int zoom, int cellSize) {
+		Map<Long, Cell> cells = new HashMap<>(markers.size() * 2);
+		long[] keys = new long[markers.size()];
+		for (int i = 0; i < keys.length; i++) {
+			StaticMarker marker = markers.get(i);
+			if (Double.isNaN(marker.latitude()))
+				continue;
+			long cx = (long) (WebMercator.x(marker.longitude(), zoom) / cellSize);
+			long cy = (long) (WebMercator.y(marker.latitude(), zoom) / cellSize);
+			keys[i] = cx << 32 | cy;
+			Cell cell = cells.computeIfAbsent(keys[i], k -> new Cell(marker));
+			cell.count++;
+			cell.latitudes += marker.latitude();
+			cell.deltaLongitudes += DistanceKernels.deltaLongitude(cell.first.longitude(), marker.longitude());
+		}
+
+		List<StaticMarker> clustered = new ArrayList<>(cells.size());
+		for (int i = 0; i < keys.length; i++) {
+			StaticMarker marker = markers.get(i);
+			Cell cell = Double.isNaN(marker.latitude()) ? null : cells.get(keys[i]);
+			if (cell == null || cell.count == 1)
+				clustered.add(marker);
+			else if (!cell.emitted) {
+				// a marker may be in the list more than once
+				cell.emitted = true;
+				clustered.add(clusterMarker(cell));
+			}
+		}
+		return clustered;
+	}
+
+	private StaticMarker clusterMarker(Cell cell) {
+		double longitude = cell.first.longitude() + cell.deltaLongitudes / cell.count;
+		if (longitude > 180)
+			longitude -= 360;
+		else if (longitude < -180)
+			longitude += 360;
+		StaticMarker marker = new StaticMarker(cell.latitudes / cell.count, longitude);
+		if (color != null)
+			marker.setColor(color);
+		if (countLabels && cell.count < 10)
+			marker.setLabel(Character.forDigit(cell.count, 10));
+		return marker;
+	}
+}
@@ -0,0 +1,144 @@
+package de.pentabyte.googlemaps;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Coordinates stored in two parallel double arrays - one object per path
+ * instead of one {@link LatLon} per point. Meant for long tracks.
+ * 
+ * @see StaticPath#StaticPath(PackedCoordinates)
+ */
+public class PackedCoordinates implements Serializable {
+	private static final long serialVersionUID = -5470853920331311218L;
+	private double[] latitudes;
+	private double[] longitudes;
+	private int size;
+	/**
+	 * incremented by every modification, lets {@link StaticPath} detect changes
+	 */
+	private transient int modCount;
+
+	public PackedCoordinates() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity expected number of coordinates
+	 */
+	public PackedCoordinates(int capacity) {
+		latitudes = new double[capacity];
+		longitudes = new double[capacity];
+	}
+
+	/**
+	 * Uses the given arrays without copying them. Do not modify them
+	 * afterwards: rendered paths are cached.
+	 */
+	public PackedCoordinates(double[] latitudes, double[] longitudes) {
+		if (latitudes.length != longitudes.length)
+			throw new IllegalArgumentException("latitudes and longitudes must have the same length");
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.size = latitudes.length;
+	}
+
+	/**
+	 * @return a packed copy of the given coordinates.
+	 */
+	public static PackedCoordinates of(List<? extends LatLon> coords) {
+		return of(coords, null);
+	}
+
+	/**
+	 * @param bounds null or a box to be extended by the coordinates while they
+	 *               are copied anyway
+	 */
+	static PackedCoordinates of(List<? extends LatLon> coords, BoundingBox bounds) {
+		PackedCoordinates packed = new PackedCoordinates(coords.size());
+		for (LatLon coord : coords) {
+			double latitude = coord.getLatitude();
+			double longitude = coord.getLongitude();
+			packed.add(latitude, longitude);
+			if (bounds != null)
+				bounds.add(latitude, longitude);
+		}
+		return packed;
+	}
+
+	public void add(double latitude, double longitude) {
+		if (size == latitudes.length) {
+			int capacity = Math.max(16, size + (size >> 1));
+			latitudes = Arrays.copyOf(latitudes, capacity);
+			longitudes = Arrays.copyOf(longitudes, capacity);
+		}
+		latitudes[size] = latitude;
+		longitudes[size] = longitude;
+		size++;
+		modCount++;
+	}
+
+	public void clear() {
+		size = 0;
+		modCount++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double getLatitude(int index) {
+		checkIndex(index);
+		return latitudes[index];
+	}
+
+	public double getLongitude(int index) {
+		checkIndex(index);
+		return longitudes[index];
+	}
+
+	/**
+	 * @return a read-only view. Every access creates a {@link LatLon}.
+	 */
+	public List<LatLon> asList() {
+		return new ListView();
+	}
+
+	int modCount() {
+		return modCount;
+	}
+
+	/**
+	 * Backing array, only valid up to {@link #size()}.
+	 */
+	double[] latitudes() {
+		return latitudes;
+	}
+
+	/**
+	 * Backing array, only valid up to {@link #size()}.
+	 */
+	double[] longitudes() {
+		return longitudes;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	}
+
+	private class ListView extends AbstractList<LatLon> implements RandomAccess {
+		@Override
+		public LatLon get(int index) {
+			return new LatLonImpl(getLatitude(index), getLongitude(index));
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package de.pentabyte.googlemaps;
+
+/**
+ * Decides which points of a {@link StaticPath} are worth sending to Google.
+ * Implementations work on primitive arrays and rank the points by their
+ * importance for the shape of the path, so that the best approximation for any
+ * number of points is just a prefix of the ranking.
+ *
+ * @see DouglasPeuckerSimplifier
+ * @see VisvalingamWhyattSimplifier
+ */
+public interface PathSimplifier {
+	/**
+	 * @param latitudes       the path's latitudes (index 0 to count - 1)
+	 * @param longitudes      the path's longitudes (index 0 to count - 1)
+	 * @param count           number of points
+	 * @param toleranceMeters points which contribute less than this to the
+	 *                        shape will not be ranked at all
+	 * @return indices of the relevant points, most important first. The first
+	 *         and the last point of the path always lead the ranking.
+	 */
+	int[] rank(double[] latitudes, double[] longitudes, int count, double toleranceMeters);
+}
@@ -0,0 +1,84 @@
+package de.pentabyte.googlemaps;
+
+/**
+ * For decoding Google-Polylines, the inverse of {@link PolylineEncoder}.
+ * Decodes straight into primitive arrays.
+ */
+public class PolylineDecoder {
+	private PolylineDecoder() {
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the polyline is malformed
+	 */
+	public static PackedCoordinates decode(CharSequence polyline) {
+		return decode(polyline, (BoundingBox) null);
+	}
+
+	/**
+	 * @param bounds null or a box to be extended by the decoded coordinates
+	 */
+	static PackedCoordinates decode(CharSequence polyline, BoundingBox bounds) {
+		// at least 2 characters per coordinate, usually more
+		PackedCoordinates coords = new PackedCoordinates(Math.max(16, polyline.length() / 6));
+		decode(polyline, coords, bounds);
+		return coords;
+	}
+
+	/**
+	 * Appends the decoded coordinates to target.
+	 * 
+	 * @throws IllegalArgumentException if the polyline is malformed
+	 */
+	public static void decode(CharSequence polyline, PackedCoordinates target) {
+		decode(polyline, target, null);
+	}
+
+	/**
+	 * @param bounds null or a box to be extended by the decoded coordinates
+	 */
+	static void decode(CharSequence polyline, PackedCoordinates target, BoundingBox bounds) {
+		int length = polyline.length();
+		int index = 0;
+		int lat = 0;
+		int lon = 0;
+		while (index < length) {
+			long result = decodeSignedNumber(polyline, index);
+			index = (int) (result >>> 32);
+			lat += (int) result;
+			if (index >= length)
+				throw new IllegalArgumentException("invalid polyline: longitude missing at index " + index);
+
+			result = decodeSignedNumber(polyline, index);
+			index = (int) (result >>> 32);
+			lon += (int) result;
+
+			double latitude = lat / 1e+5;
+			double longitude = lon / 1e+5;
+			target.add(latitude, longitude);
+			if (bounds != null)
+				bounds.add(latitude, longitude);
+		}
+	}
+
+	/**
+	 * @return next index (upper 32 bit) and the decoded number (lower 32 bit) -
+	 *         packed into a long to avoid allocating a result object.
+	 */
+	private static long decodeSignedNumber(CharSequence polyline, int index) {
+		int result = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (index >= polyline.length() || shift > 30)
+				throw new IllegalArgumentException("invalid polyline: unterminated number at index " + index);
+			b = polyline.charAt(index++) - 63;
+			if (b < 0 || b > 0x3f)
+				throw new IllegalArgumentException("invalid polyline: illegal character at index " + (index - 1));
+			result |= (b & 0x1f) << shift;
+			shift += 5;
+		} while (b >= 0x20);
+		int num = (result & 1) != 0 ? ~(result >>> 1) : (result >>> 1);
+		return ((long) index << 32) | (num & 0xFFFFFFFFL);
+	}
+}
@@ -1,13 +1,30 @@
 package de.pentabyte.googlemaps;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * For encoding Google-Polylines.
+ *
+ * An encoder can be reused (see {@link #reset()}), so a renderer can keep one
+ * per thread and encode any number of paths without allocating. Not thread
+ * safe.
  */
 public class PolylineEncoder {
-	private StringBuffer buffer = new StringBuffer();
+	private char[] buffer = new char[64];
+	private int length = 0;
 	private int prevLat = 0;
 	private int prevLon = 0;
 
+	/**
+	 * @return coordinate in the polyline's fixed point format (1e-5 degrees),
+	 *         rounded as in Google's reference algorithm - so decoded
+	 *         polylines will be encoded exactly as before.
+	 */
+	public static int toE5(double degrees) {
+		return (int) Math.round(degrees * 1e+5);
+	}
+
 	private void encodeSignedNumber(int num) {
 		int sgn_num = num << 1;
 		if (num < 0) {
@@ -17,29 +34,118 @@ public class PolylineEncoder {
 	}
 
 	private void encodeNumber(int num) {
+		// an int never takes more than 7 characters
+		if (length + 7 > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + 7));
+		}
 		while (num >= 0x20) {
 			int nextValue = (0x20 | (num & 0x1f)) + 63;
-			buffer.append((char) (nextValue));
+			buffer[length++] = (char) (nextValue);
 			num >>= 5;
 		}
 		num += 63;
-		buffer.append((char) (num));
+		buffer[length++] = (char) (num);
 	}
 
 	/**
 	 * Add coordinate to polyline.
 	 */
 	public void add(double latitude, double longitude) {
-		int lat = (int) (latitude * 1e+5);
-		int lon = (int) (longitude * 1e+5);
-		encodeSignedNumber(lat - prevLat);
-		encodeSignedNumber(lon - prevLon);
-		prevLat = lat;
-		prevLon = lon;
+		addE5(toE5(latitude), toE5(longitude));
+	}
+
+	/**
+	 * Add coordinate to polyline.
+	 *
+	 * @see #toE5(double)
+	 */
+	public void addE5(int latitude, int longitude) {
+		encodeSignedNumber(latitude - prevLat);
+		encodeSignedNumber(longitude - prevLon);
+		prevLat = latitude;
+		prevLon = longitude;
+	}
+
+	/**
+	 * Adds the coordinates from index from (inclusive) to index to (exclusive).
+	 */
+	public void encode(double[] latitudes, double[] longitudes, int from, int to) {
+		for (int i = from; i < to; i++) {
+			addE5(toE5(latitudes[i]), toE5(longitudes[i]));
+		}
+	}
+
+	/**
+	 * Adds the coordinates from index from (inclusive) to index to (exclusive).
+	 *
+	 * @see #toE5(double)
+	 */
+	public void encode(int[] latitudes, int[] longitudes, int from, int to) {
+		for (int i = from; i < to; i++) {
+			addE5(latitudes[i], longitudes[i]);
+		}
+	}
+
+	/**
+	 * Adds the coordinates at the given indices.
+	 *
+	 * @param indices ascending indices into latitudes and longitudes
+	 * @param count   number of indices to be used
+	 */
+	public void encode(double[] latitudes, double[] longitudes, int[] indices, int count) {
+		for (int i = 0; i < count; i++) {
+			addE5(toE5(latitudes[indices[i]]), toE5(longitudes[indices[i]]));
+		}
+	}
+
+	/**
+	 * Starts a new polyline, keeping the allocated buffer.
+	 */
+	public void reset() {
+		length = 0;
+		prevLat = 0;
+		prevLon = 0;
+	}
+
+	/**
+	 * @return number of characters encoded so far.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Copies the polyline into dst, starting at dstBegin.
+	 *
+	 * @return number of characters copied, see {@link #length()}.
+	 */
+	public int getChars(char[] dst, int dstBegin) {
+		System.arraycopy(buffer, 0, dst, dstBegin, length);
+		return length;
+	}
+
+	/**
+	 * Writes the polyline without creating a String.
+	 */
+	public void writeTo(StringBuilder out) {
+		out.append(buffer, 0, length);
+	}
+
+	/**
+	 * Writes the polyline without creating a String.
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		if (out instanceof StringBuilder) {
+			writeTo((StringBuilder) out);
+		} else {
+			for (int i = 0; i < length; i++) {
+				out.append(buffer[i]);
+			}
+		}
 	}
 
 	@Override
 	public String toString() {
-		return buffer.toString();
+		return new String(buffer, 0, length);
 	}
-}
\ No newline at end of file
+}
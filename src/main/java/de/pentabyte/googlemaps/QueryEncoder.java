@@ -0,0 +1,205 @@
+package de.pentabyte.googlemaps;
+
+import java.io.IOException;
+
+/**
+ * Streams a URL with its query string into an {@link Appendable}. Everything
+ * appended after {@link #parameter(String)} becomes the parameter's value and
+ * will be percent-encoded (UTF-8) on the fly.
+ *
+ * The characters Google uses as separators within a parameter value (:, @, ,
+ * and |) will never be escaped. They are safe in a query string and keep the
+ * URLs short and readable.
+ */
+final class QueryEncoder implements Appendable {
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	/**
+	 * ASCII characters which do not need to be escaped.
+	 */
+	private static final boolean[] SAFE = new boolean[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++)
+			SAFE[c] = true;
+		for (char c = 'A'; c <= 'Z'; c++)
+			SAFE[c] = true;
+		for (char c = '0'; c <= '9'; c++)
+			SAFE[c] = true;
+		for (char c : "-_.~!'()*:@,|".toCharArray())
+			SAFE[c] = true;
+	}
+
+	/**
+	 * Discards everything, see {@link #counter()}.
+	 */
+	private static final Appendable DISCARD = new Appendable() {
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) {
+			return this;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq) {
+			return this;
+		}
+
+		@Override
+		public Appendable append(char c) {
+			return this;
+		}
+	};
+
+	private final Appendable out;
+	private boolean firstParameter;
+	/**
+	 * characters written so far
+	 */
+	private int length;
+	/**
+	 * high surrogate waiting for its low surrogate
+	 */
+	private char highSurrogate;
+
+	/**
+	 * @param url base URL without query string. Will be written immediately.
+	 */
+	QueryEncoder(Appendable out, String url) throws IOException {
+		this(out, url, false);
+	}
+
+	/**
+	 * @param url           base URL. Will be written immediately.
+	 * @param hasParameters true, if url already contains a query string
+	 */
+	QueryEncoder(Appendable out, String url, boolean hasParameters) throws IOException {
+		this.out = out;
+		this.firstParameter = !hasParameters;
+		write(url);
+	}
+
+	/**
+	 * @return an encoder which only measures the {@link #length()} of
+	 *         encoded values.
+	 */
+	static QueryEncoder counter() {
+		try {
+			return new QueryEncoder(DISCARD, "");
+		} catch (IOException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+	}
+
+	/**
+	 * @return number of characters written so far (URL included).
+	 */
+	int length() {
+		return length;
+	}
+
+	/**
+	 * Starts a new parameter. Subsequent appends will become its value.
+	 */
+	QueryEncoder parameter(String name) throws IOException {
+		write(firstParameter ? '?' : '&');
+		write(name);
+		write('=');
+		firstParameter = false;
+		highSurrogate = 0;
+		return this;
+	}
+
+	QueryEncoder parameter(String name, CharSequence value) throws IOException {
+		return parameter(name).append(value);
+	}
+
+	QueryEncoder parameter(String name, int value) throws IOException {
+		return parameter(name).append(value);
+	}
+
+	/**
+	 * Appends already encoded parameters (starting with '&amp;').
+	 */
+	QueryEncoder appendEncoded(String parameters) throws IOException {
+		write(parameters);
+		if (!parameters.isEmpty())
+			firstParameter = false;
+		return this;
+	}
+
+	/**
+	 * Appends a number without creating a temporary String.
+	 */
+	QueryEncoder append(int value) throws IOException {
+		long v = value;
+		if (v < 0) {
+			write('-');
+			v = -v;
+		}
+		long divisor = 1;
+		while (v / divisor >= 10)
+			divisor *= 10;
+		for (; divisor > 0; divisor /= 10)
+			write((char) ('0' + v / divisor % 10));
+		return this;
+	}
+
+	@Override
+	public QueryEncoder append(CharSequence csq) throws IOException {
+		if (csq == null)
+			csq = "null";
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public QueryEncoder append(CharSequence csq, int start, int end) throws IOException {
+		if (csq == null)
+			csq = "null";
+		for (int i = start; i < end; i++)
+			append(csq.charAt(i));
+		return this;
+	}
+
+	@Override
+	public QueryEncoder append(char c) throws IOException {
+		if (c < 128) {
+			if (SAFE[c])
+				write(c);
+			else if (c == ' ')
+				write('+');
+			else
+				escape(c);
+		} else if (c < 0x800) {
+			escape(0xC0 | (c >> 6));
+			escape(0x80 | (c & 0x3F));
+		} else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		} else if (Character.isLowSurrogate(c) && highSurrogate != 0) {
+			int codePoint = Character.toCodePoint(highSurrogate, c);
+			highSurrogate = 0;
+			escape(0xF0 | (codePoint >> 18));
+			escape(0x80 | ((codePoint >> 12) & 0x3F));
+			escape(0x80 | ((codePoint >> 6) & 0x3F));
+			escape(0x80 | (codePoint & 0x3F));
+		} else {
+			escape(0xE0 | (c >> 12));
+			escape(0x80 | ((c >> 6) & 0x3F));
+			escape(0x80 | (c & 0x3F));
+		}
+		return this;
+	}
+
+	private void escape(int b) throws IOException {
+		out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+		length += 3;
+	}
+
+	private void write(char c) throws IOException {
+		out.append(c);
+		length++;
+	}
+
+	private void write(String s) throws IOException {
+		out.append(s);
+		length += s.length();
+	}
+}
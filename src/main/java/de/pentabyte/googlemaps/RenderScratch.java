@@ -0,0 +1,30 @@
+package de.pentabyte.googlemaps;
+
+/**
+ * Working memory for rendering one URL at a time. Keeps cached render results
+ * (e.g. {@link SimplifiedPath}) free of mutable state, so they can be shared by
+ * concurrent renderings.
+ */
+final class RenderScratch {
+	final PolylineEncoder encoder = new PolylineEncoder();
+	private long[] bits = new long[16];
+	private final StringBuilder url = new StringBuilder(256);
+
+	/**
+	 * @return an empty buffer for a URL
+	 */
+	StringBuilder url() {
+		url.setLength(0);
+		return url;
+	}
+
+	/**
+	 * @return an array of at least the given size (in words of 64 bits).
+	 *         Contents are undefined.
+	 */
+	long[] bits(int size) {
+		if (bits.length < size)
+			bits = new long[Math.max(size, bits.length * 2)];
+		return bits;
+	}
+}
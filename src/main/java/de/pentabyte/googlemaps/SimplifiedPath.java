@@ -0,0 +1,126 @@
+package de.pentabyte.googlemaps;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The coordinates of a {@link StaticPath} after distance filtering, ranked by
+ * a {@link PathSimplifier}. Any number of points can be encoded from here: the
+ * best approximation with n points is always the first n of the ranking.
+ * 
+ * Immutable apart from the memoized fragment, so it can be cached by
+ * {@link StaticPath} and shared by concurrent renderings. Coordinates are kept
+ * in the polyline's fixed point format: rounded once, encoded many times (see
+ * {@link #fit(int, RenderScratch)}).
+ */
+final class SimplifiedPath {
+	private final int[] latitudes;
+	private final int[] longitudes;
+	private final int[] ranking;
+	/**
+	 * the polyline encoded most recently
+	 */
+	private volatile Fragment fragment;
+
+	/**
+	 * @param count number of valid coordinates, the arrays may be longer
+	 */
+	SimplifiedPath(double[] latitudes, double[] longitudes, int count, int[] ranking) {
+		this.latitudes = new int[count];
+		this.longitudes = new int[count];
+		for (int i = 0; i < count; i++) {
+			this.latitudes[i] = PolylineEncoder.toE5(latitudes[i]);
+			this.longitudes[i] = PolylineEncoder.toE5(longitudes[i]);
+		}
+		this.ranking = ranking;
+	}
+
+	/**
+	 * @return number of ranked points (upper limit for all point counts).
+	 */
+	int size() {
+		return ranking.length;
+	}
+
+	/**
+	 * @param maxPoints 0 or less: no limit
+	 */
+	int limit(int maxPoints) {
+		return maxPoints > 0 ? Math.min(maxPoints, ranking.length) : ranking.length;
+	}
+
+	/**
+	 * Writes the encoded polyline of the most important points (in path
+	 * order).
+	 */
+	void encodeTo(Appendable out, int points, RenderScratch scratch) throws IOException {
+		Fragment last = fragment;
+		if (last == null || last.points != points) {
+			last = new Fragment(points, encode(points, scratch).toString());
+			fragment = last;
+		}
+		out.append(last.polyline);
+	}
+
+	private PolylineEncoder encode(int points, RenderScratch scratch) {
+		// marking the kept points restores path order in linear time, sorting
+		// the ranking's prefix would take O(points log points) per call
+		int words = (latitudes.length + 63) >>> 6;
+		long[] kept = scratch.bits(words);
+		Arrays.fill(kept, 0, words, 0);
+		for (int i = 0; i < points; i++)
+			kept[ranking[i] >>> 6] |= 1L << ranking[i];
+
+		PolylineEncoder encoder = scratch.encoder;
+		encoder.reset();
+		for (int word = 0; word < words; word++) {
+			for (long bits = kept[word]; bits != 0; bits &= bits - 1) {
+				int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+				encoder.addE5(latitudes[index], longitudes[index]);
+			}
+		}
+		return encoder;
+	}
+
+	/**
+	 * @return length of the polyline within a URL (escaping included).
+	 */
+	int encodedLength(int points, RenderScratch scratch) {
+		QueryEncoder counter = QueryEncoder.counter();
+		try {
+			encode(points, scratch).writeTo(counter);
+		} catch (IOException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+		return counter.length();
+	}
+
+	/**
+	 * @return the largest number of points whose encoded polyline does not
+	 *         exceed maxLength - but at least the end points of the path.
+	 */
+	int fit(int maxLength, RenderScratch scratch) {
+		int low = Math.min(2, ranking.length);
+		int high = ranking.length;
+		if (encodedLength(high, scratch) <= maxLength)
+			return high;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (encodedLength(mid, scratch) <= maxLength)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	private static final class Fragment {
+		private final int points;
+		private final String polyline;
+
+		Fragment(int points, String polyline) {
+			this.points = points;
+			this.polyline = polyline;
+		}
+	}
+}
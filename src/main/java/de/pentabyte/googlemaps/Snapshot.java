@@ -0,0 +1,78 @@
+package de.pentabyte.googlemaps;
+
+import java.util.Arrays;
+
+/**
+ * The state a rendered URL has been created from: the objects involved and
+ * their modification counters. As long as a {@link Source} visits exactly the
+ * same objects with the same counters, the URL can be reused.
+ */
+final class Snapshot {
+	interface Visitor {
+		/**
+		 * @return false to stop visiting
+		 */
+		boolean visit(Object object, int modCount);
+	}
+
+	interface Source {
+		/**
+		 * Visits everything a rendering depends on, in a stable order.
+		 * 
+		 * @return false, if the visitor stopped the visit
+		 */
+		boolean accept(Visitor visitor);
+	}
+
+	private final Object[] objects;
+	private final int[] modCounts;
+
+	private Snapshot(Object[] objects, int[] modCounts) {
+		this.objects = objects;
+		this.modCounts = modCounts;
+	}
+
+	static Snapshot of(Source source) {
+		Recorder recorder = new Recorder();
+		source.accept(recorder);
+		return new Snapshot(Arrays.copyOf(recorder.objects, recorder.size),
+				Arrays.copyOf(recorder.modCounts, recorder.size));
+	}
+
+	/**
+	 * O(n), but without any allocation worth mentioning.
+	 */
+	boolean matches(Source source) {
+		Matcher matcher = new Matcher();
+		return source.accept(matcher) && matcher.index == objects.length;
+	}
+
+	private final class Matcher implements Visitor {
+		private int index;
+
+		@Override
+		public boolean visit(Object object, int modCount) {
+			if (index >= objects.length || objects[index] != object || modCounts[index] != modCount)
+				return false;
+			index++;
+			return true;
+		}
+	}
+
+	private static final class Recorder implements Visitor {
+		private Object[] objects = new Object[16];
+		private int[] modCounts = new int[16];
+		private int size;
+
+		@Override
+		public boolean visit(Object object, int modCount) {
+			if (size == objects.length) {
+				objects = Arrays.copyOf(objects, size * 2);
+				modCounts = Arrays.copyOf(modCounts, size * 2);
+			}
+			objects[size] = object;
+			modCounts[size++] = modCount;
+			return true;
+		}
+	}
+}
@@ -1,18 +1,20 @@
 package de.pentabyte.googlemaps;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.stream.Collectors;
-
-import org.apache.http.client.utils.URIBuilder;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Link-Creator for static Google Maps v2. Call {@link #toString()} to create
- * static map URL.
+ * static map URL or {@link #writeTo(Appendable)} to stream it into a buffer.
  * 
  * @see <a href="https://github.com/hoereth/google-static-map-creator">github
  *      readme file</a> for examples.
@@ -22,7 +24,17 @@ import org.apache.http.client.utils.URIBuilder;
  */
 public class StaticMap implements Serializable {
 	private static final long serialVersionUID = 155958884165520846L;
-	private static String API_URL = "https://maps.googleapis.com/maps/api/staticmap";
+	static final String API_URL = "https://maps.googleapis.com/maps/api/staticmap";
+	/**
+	 * Google's limit for addresses in a single map
+	 */
+	public static final int MAX_GEOCODED_LOCATIONS = 15;
+	/**
+	 * Coordinate decimals derived from the explicit zoom: just enough for
+	 * sub-pixel accuracy, 6 if Google chooses the zoom. See
+	 * {@link #setCoordinateDecimals(int)}.
+	 */
+	public static final int ZOOM_DECIMALS = -1;
 
 	private final int width, height;
 	private String apiKey;
@@ -36,6 +48,25 @@ public class StaticMap implements Serializable {
 	private String language;
 	private String region;
 	private List<Location> visibles;
+	private int maxUrlLength = 8192;
+	private boolean canonical;
+	private int coordinateDecimals = CoordinateFormat.MAX_DECIMALS;
+	private MarkerClustering markerClustering;
+	/**
+	 * Running counters for validation, see {@link #syncCounters()}. Null after
+	 * deserialization.
+	 */
+	private transient LocationCounters markerCounters, visibleCounters;
+	/**
+	 * Result of the last rendering. Reset by all setters, see
+	 * {@link #toString()}.
+	 */
+	private transient volatile RenderedUrl rendered;
+	/**
+	 * Pre-rendered size, scale, maptype, format, key, language and region. Null
+	 * as soon as one of them changes.
+	 */
+	private StaticMapTemplate template;
 
 	public enum Maptype {
 		roadmap, satellite, hybrid, terrain
@@ -56,16 +87,113 @@ public class StaticMap implements Serializable {
 		this.apiKey = apiKey;
 	}
 
+	/**
+	 * Copies the settings of another map - but none of its content.
+	 * 
+	 * @param template the template settings belongs to, if any
+	 */
+	StaticMap(StaticMap settings, StaticMapTemplate template) {
+		this(settings.width, settings.height, settings.apiKey);
+		this.scale = settings.scale;
+		this.maptype = settings.maptype;
+		this.format = settings.format;
+		this.language = settings.language;
+		this.region = settings.region;
+		this.maxUrlLength = settings.maxUrlLength;
+		this.canonical = settings.canonical;
+		this.coordinateDecimals = settings.coordinateDecimals;
+		this.template = template;
+	}
+
 	public int getScale() {
 		return scale;
 	}
 
+	public int getMaxUrlLength() {
+		return maxUrlLength;
+	}
+
+	/**
+	 * Default: 8192 (Google's limit). Paths will be simplified until the URL
+	 * fits.
+	 * 
+	 * @param maxUrlLength characters
+	 */
+	public void setMaxUrlLength(int maxUrlLength) {
+		rendered = null;
+		this.maxUrlLength = maxUrlLength;
+	}
+
+	public boolean isCanonical() {
+		return canonical;
+	}
+
+	/**
+	 * Default: false. Canonical maps write equivalent content as the same URL,
+	 * so it can be cached (see {@link StaticMapImageCache}): markers and
+	 * visibles are sorted and deduplicated, whitespace in addresses is
+	 * normalized, defaults (maptype roadmap, marker color red) are omitted and parameters
+	 * are written in a fixed order. Markers may overlap differently.
+	 */
+	public void setCanonical(boolean canonical) {
+		rendered = null;
+		template = null;
+		this.canonical = canonical;
+	}
+
+	public int getCoordinateDecimals() {
+		return coordinateDecimals;
+	}
+
+	/**
+	 * Default: 6 (about 10 cm). Applies to center, markers and visibles;
+	 * trailing zeros are omitted.
+	 * 
+	 * @param decimals 0 to 6, or {@link #ZOOM_DECIMALS}
+	 */
+	public void setCoordinateDecimals(int decimals) {
+		if ((decimals < 0 || decimals > CoordinateFormat.MAX_DECIMALS) && decimals != ZOOM_DECIMALS)
+			throw new IllegalArgumentException("decimals must be 0 to 6 or ZOOM_DECIMALS");
+		rendered = null;
+		this.coordinateDecimals = decimals;
+	}
+
+	/**
+	 * @return decimals for the coordinates in the URL, see
+	 *         {@link #setCoordinateDecimals(int)}
+	 */
+	private int coordinateDecimals() {
+		if (coordinateDecimals != ZOOM_DECIMALS)
+			return coordinateDecimals;
+		Integer explicitZoom = zoom != null ? zoom : getZoom();
+		return explicitZoom != null ? CoordinateFormat.decimalsFor(explicitZoom, scale)
+				: CoordinateFormat.MAX_DECIMALS;
+	}
+
+	public MarkerClustering getMarkerClustering() {
+		return markerClustering;
+	}
+
+	/**
+	 * Default: null, all markers will be written even if the URL gets too
+	 * long.
+	 * 
+	 * @param markerClustering merges nearby markers if they do not fit into
+	 *                         {@link #getMaxUrlLength()}
+	 */
+	public void setMarkerClustering(MarkerClustering markerClustering) {
+		rendered = null;
+		this.markerClustering = markerClustering;
+	}
+
 	/**
 	 * Default: 1.
 	 * 
 	 * @param scale
 	 */
 	public void setScale(int scale) {
+		rendered = null;
+		template = null;
 		if (scale < 1 || scale > 4 || scale == 3)
 			throw new IllegalArgumentException("scale must be 1,2 or 4");
 		this.scale = scale;
@@ -87,6 +215,7 @@ public class StaticMap implements Serializable {
 	 *              Buildings
 	 */
 	public void setZoom(Integer zoom) {
+		rendered = null;
 		this.zoom = zoom;
 	}
 
@@ -95,6 +224,7 @@ public class StaticMap implements Serializable {
 	}
 
 	public void setCenter(Location center) {
+		rendered = null;
 		this.center = center;
 	}
 
@@ -118,45 +248,218 @@ public class StaticMap implements Serializable {
 		return markers;
 	}
 
+	/**
+	 * @throws IllegalArgumentException if more than
+	 *                                  {@value #MAX_GEOCODED_LOCATIONS}
+	 *                                  locations would have to be geocoded
+	 */
 	public void setMarkers(List<StaticMarker> markers) {
+		syncCounters();
+		int geocoded = countGeocoded(markers);
+		checkGeocodedLocations(geocoded + visibleCounters.geocoded);
+		rendered = null;
 		this.markers = markers;
+		markerCounters.recount(markers);
 	}
 
+	/**
+	 * @throws IllegalArgumentException if more than
+	 *                                  {@value #MAX_GEOCODED_LOCATIONS}
+	 *                                  locations would have to be geocoded
+	 */
 	public void addMarker(StaticMarker marker) {
+		boolean geocoded = marker.isGeocodingRequired();
+		if (geocoded || markerCounters == null)
+			syncCounters();
+		if (geocoded)
+			checkGeocodedLocations(markerCounters.geocoded + visibleCounters.geocoded + 1);
+		rendered = null;
 		if (markers == null) {
 			markers = new ArrayList<>();
+			markerCounters.recount(markers);
 		}
-		testMaximumGeocodeLocations();
 		markers.add(marker);
-	}
-
-	private void testMaximumGeocodeLocations() {
-		List<Location> locations = new ArrayList<>();
-		if (visibles != null)
-			locations.addAll(visibles);
-		if (markers != null)
-			locations.addAll(markers);
-		long count = locations.stream() //
-				.filter(loc -> loc.isGeocodingRequired()).count();
-		if (count >= 15) {
-			throw new IllegalArgumentException("The maximum number of geocoded locations has already been reached.");
-		}
+		markerCounters.add(marker);
 	}
 
 	public List<Location> getVisibles() {
 		return visibles;
 	}
 
+	/**
+	 * @throws IllegalArgumentException if more than
+	 *                                  {@value #MAX_GEOCODED_LOCATIONS}
+	 *                                  locations would have to be geocoded
+	 */
 	public void setVisibles(List<Location> visibles) {
+		syncCounters();
+		int geocoded = countGeocoded(visibles);
+		checkGeocodedLocations(markerCounters.geocoded + geocoded);
+		rendered = null;
 		this.visibles = visibles;
+		visibleCounters.recount(visibles);
 	}
 
+	/**
+	 * @throws IllegalArgumentException if more than
+	 *                                  {@value #MAX_GEOCODED_LOCATIONS}
+	 *                                  locations would have to be geocoded
+	 */
 	public void addVisible(Location visible) {
+		boolean geocoded = visible.isGeocodingRequired();
+		if (geocoded || visibleCounters == null)
+			syncCounters();
+		if (geocoded)
+			checkGeocodedLocations(markerCounters.geocoded + visibleCounters.geocoded + 1);
+		rendered = null;
 		if (visibles == null) {
 			visibles = new ArrayList<>();
+			visibleCounters.recount(visibles);
 		}
-		testMaximumGeocodeLocations();
 		visibles.add(visible);
+		visibleCounters.add(visible);
+	}
+
+	/**
+	 * @return number of markers and visibles Google will have to geocode
+	 */
+	public int getGeocodedLocations() {
+		syncCounters();
+		return markerCounters.geocoded + visibleCounters.geocoded;
+	}
+
+	/**
+	 * Cheap estimate (no rendering) of the URL length without paths. Markers
+	 * are counted as if they were not grouped or clustered.
+	 */
+	public int getEstimatedLength() {
+		syncCounters();
+		QueryEncoder counter = QueryEncoder.counter();
+		try {
+			counter.appendEncoded(API_URL);
+			writeSize(counter);
+			writeCenter(counter);
+			writeSettings(counter);
+			writeSuffix(counter);
+		} catch (IOException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+		int length = counter.length() + markerCounters.length;
+		if (visibleCounters.size > 0)
+			length += "&visible=".length() + visibleCounters.length - 1;
+		return length;
+	}
+
+	/**
+	 * Checks Google's limits, based on counters maintained by the setters and
+	 * add-methods (no rendering).
+	 * 
+	 * @return descriptions of all violations, empty if there are none
+	 */
+	public List<String> getViolations() {
+		List<String> violations = new ArrayList<>();
+		int geocoded = getGeocodedLocations();
+		if (geocoded > MAX_GEOCODED_LOCATIONS)
+			violations.add(geocoded + " locations to be geocoded, Google allows " + MAX_GEOCODED_LOCATIONS);
+		int length = getEstimatedLength();
+		if (length > maxUrlLength && markerClustering == null)
+			violations.add("markers and visibles need about " + length + " characters, maxUrlLength is "
+					+ maxUrlLength);
+		return violations;
+	}
+
+	private static void checkGeocodedLocations(int count) {
+		if (count > MAX_GEOCODED_LOCATIONS)
+			throw new IllegalArgumentException("The maximum number of geocoded locations has already been reached.");
+	}
+
+	/**
+	 * Recounts after the lists or their markers have been modified directly
+	 * (added, removed, replaced or restyled).
+	 */
+	private void syncCounters() {
+		if (markerCounters == null)
+			markerCounters = new LocationCounters("&markers=".length());
+		if (!markerCounters.matches(markers))
+			markerCounters.recount(markers);
+		if (visibleCounters == null)
+			visibleCounters = new LocationCounters("|".length());
+		if (!visibleCounters.matches(visibles))
+			visibleCounters.recount(visibles);
+	}
+
+	private static int countGeocoded(List<? extends Location> locations) {
+		int count = 0;
+		if (locations != null) {
+			for (Location location : locations) {
+				if (location.isGeocodingRequired())
+					count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return encoded length of the location including its style
+	 */
+	private static int estimateLength(Location location) {
+		QueryEncoder counter = QueryEncoder.counter();
+		try {
+			location.writeTo(counter);
+		} catch (IOException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+		return counter.length();
+	}
+
+	/**
+	 * Replaces center, markers and visibles which would be geocoded by Google
+	 * with coordinates (markers keep their style), see {@link CachingGeocoder}.
+	 * The marker and visible lists will be replaced by new lists.
+	 * 
+	 * @return number of locations the geocoder could not resolve. They will
+	 *         still be geocoded by Google.
+	 */
+	public int geocode(Geocoder geocoder) throws IOException {
+		rendered = null;
+		int unresolved = 0;
+		if (center != null && center.isGeocodingRequired()) {
+			LatLon coordinate = geocoder.geocode(center.query());
+			if (coordinate != null)
+				center = new Location(coordinate.getLatitude(), coordinate.getLongitude());
+			else
+				unresolved++;
+		}
+		if (markers != null) {
+			List<StaticMarker> resolved = new ArrayList<>(markers.size());
+			for (StaticMarker marker : markers) {
+				if (marker.isGeocodingRequired()) {
+					LatLon coordinate = geocoder.geocode(marker.query());
+					if (coordinate != null)
+						marker = new StaticMarker(marker, coordinate.getLatitude(), coordinate.getLongitude());
+					else
+						unresolved++;
+				}
+				resolved.add(marker);
+			}
+			markers = resolved;
+		}
+		if (visibles != null) {
+			List<Location> resolved = new ArrayList<>(visibles.size());
+			for (Location visible : visibles) {
+				if (visible.isGeocodingRequired()) {
+					LatLon coordinate = geocoder.geocode(visible.query());
+					if (coordinate != null)
+						visible = new Location(coordinate.getLatitude(), coordinate.getLongitude());
+					else
+						unresolved++;
+				}
+				resolved.add(visible);
+			}
+			visibles = resolved;
+		}
+		syncCounters();
+		return unresolved;
 	}
 
 	public List<StaticPath> getPaths() {
@@ -164,10 +467,12 @@ public class StaticMap implements Serializable {
 	}
 
 	public void setPaths(List<StaticPath> paths) {
+		rendered = null;
 		this.paths = paths;
 	}
 
 	public void addPath(StaticPath path) {
+		rendered = null;
 		if (paths == null) {
 			paths = new ArrayList<>();
 		}
@@ -175,74 +480,355 @@ public class StaticMap implements Serializable {
 	}
 
 	/**
-	 * Google-Map-Link
+	 * Google-Map-Link. The URL will be reused until the map, its markers,
+	 * visibles or paths change (setters, add-methods, modifications of the
+	 * lists), so repeated calls are cheap.
 	 */
 	public String toString() {
+		return toString(null);
+	}
+
+	/**
+	 * @param scratch null: allocate working memory, if needed
+	 */
+	String toString(RenderScratch scratch) {
+		RenderedUrl last = rendered;
+		if (last != null && last.state.matches(this::acceptState))
+			return last.url;
+
+		Snapshot state = Snapshot.of(this::acceptState);
+		if (scratch == null)
+			scratch = new RenderScratch();
+		StringBuilder url = scratch.url();
 		try {
-			URIBuilder builder;
-
-			builder = new URIBuilder(API_URL);
-
-			// Dimensionen
-			builder.addParameter("size", width + "x" + height);
-			if (center != null)
-				builder.addParameter("center", center.toString());
-			if (zoom != null)
-				builder.addParameter("zoom", zoom.toString());
-			if (scale != 1)
-				builder.addParameter("scale", String.valueOf(scale));
-			if (maptype != null)
-				builder.addParameter("maptype", maptype.name());
-			if (format != null && Format.PNG != format)
-				builder.addParameter("format", format.getValue());
-			if (getZoom() != null)
-				builder.addParameter("zoom", String.valueOf(getZoom()));
-
-			if (markers != null) {
-				for (StaticMarker marker : markers) {
-					builder.addParameter("markers", marker.toString());
+			render(url, scratch);
+		} catch (IOException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+		last = new RenderedUrl(url.toString(), state);
+		rendered = last;
+		return last.url;
+	}
+
+	/**
+	 * Writes the Google-Map-Link into the given buffer.
+	 */
+	public void writeTo(StringBuilder out) {
+		try {
+			writeTo((Appendable) out);
+		} catch (IOException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+	}
+
+	/**
+	 * Writes the Google-Map-Link into the given target: the cached URL, if it
+	 * is still valid (see {@link #toString()}). Otherwise the URL will be
+	 * streamed into the target without building a String (and not cached).
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		RenderedUrl last = rendered;
+		if (last != null && last.state.matches(this::acceptState))
+			out.append(last.url);
+		else
+			render(out, new RenderScratch());
+	}
+
+	/**
+	 * Streams the Google-Map-Link into the given target, bypassing the cache.
+	 */
+	void render(Appendable out, RenderScratch scratch) throws IOException {
+		QueryEncoder query;
+		if (template != null) {
+			query = new QueryEncoder(out, template.getPrefix(), true);
+			writeCenter(query);
+		} else if (canonical) {
+			// same order as templates
+			query = new QueryEncoder(out, API_URL);
+			writeSize(query);
+			writeSettings(query);
+			writeCenter(query);
+		} else {
+			query = new QueryEncoder(out, API_URL);
+			writeSize(query);
+			writeCenter(query);
+			writeSettings(query);
+		}
+
+		if (zoom == null && getZoom() != null)
+			query.parameter("zoom", getZoom());
+
+		if (markers != null && !markers.isEmpty())
+			writeMarkers(query, fitMarkers(query, scratch));
+
+		if (visibles != null && !visibles.isEmpty())
+			writeVisibles(query);
+
+		if (paths != null && !paths.isEmpty())
+			writePaths(query, scratch);
+
+		writeSuffix(query);
+	}
+
+	/**
+	 * Markers with the same style share one parameter. Canonical maps sort the
+	 * groups and their locations and drop duplicates, otherwise the groups
+	 * appear in the order of their first marker.
+	 */
+	private void writeMarkers(QueryEncoder query, List<StaticMarker> markers) throws IOException {
+		Map<String, List<StaticMarker>> groups = canonical ? new TreeMap<>() : new LinkedHashMap<>();
+		StringBuilder style = new StringBuilder();
+		for (StaticMarker marker : markers) {
+			style.setLength(0);
+			marker.writeStyle(style, canonical);
+			groups.computeIfAbsent(style.toString(), s -> new ArrayList<>()).add(marker);
+		}
+
+		int decimals = coordinateDecimals();
+		for (Map.Entry<String, List<StaticMarker>> group : groups.entrySet()) {
+			query.parameter("markers", group.getKey());
+			if (canonical) {
+				writeJoined(query, canonicalize(group.getValue(), decimals));
+			} else {
+				boolean first = true;
+				for (StaticMarker marker : group.getValue()) {
+					if (!first)
+						query.append('|');
+					marker.writeLocationTo(query, false, decimals);
+					first = false;
 				}
 			}
+		}
+	}
 
-			if (visibles != null) {
-				builder.addParameter("visible", visibles.stream() //
-						.map(v -> v.toString()) //
-						.collect(Collectors.joining("|")));
+	/**
+	 * @return the markers, clustered if they exceed the URL length left by all
+	 *         other parameters (apart from path coordinates)
+	 */
+	private List<StaticMarker> fitMarkers(QueryEncoder query, RenderScratch scratch) throws IOException {
+		if (markerClustering == null)
+			return markers;
+
+		QueryEncoder counter = QueryEncoder.counter();
+		if (visibles != null && !visibles.isEmpty())
+			writeVisibles(counter);
+		if (paths != null) {
+			for (StaticPath path : paths)
+				path.formatTo(counter.parameter("path"), null, 0, scratch);
+		}
+		writeSuffix(counter);
+		int available = maxUrlLength - query.length() - counter.length();
+		if (markersLength(markers) <= available)
+			return markers;
+
+		Viewport viewport = getViewport();
+		if (viewport == null)
+			return markers;
+
+		int maxCellSize = 2 * Math.max(width, height);
+		for (int cellSize = markerClustering.getCellSize();; cellSize *= 2) {
+			List<StaticMarker> clustered = markerClustering.cluster(markers, viewport.getZoom(), cellSize);
+			if (cellSize >= maxCellSize || markersLength(clustered) <= available)
+				return clustered;
+		}
+	}
+
+	private int markersLength(List<StaticMarker> markers) throws IOException {
+		QueryEncoder counter = QueryEncoder.counter();
+		writeMarkers(counter, markers);
+		return counter.length();
+	}
+
+	private void writeVisibles(QueryEncoder query) throws IOException {
+		query.parameter("visible");
+		int decimals = coordinateDecimals();
+		if (canonical) {
+			writeJoined(query, canonicalize(visibles, decimals));
+		} else {
+			boolean first = true;
+			for (Location visible : visibles) {
+				if (!first)
+					query.append('|');
+				visible.writeLocationTo(query, false, decimals);
+				first = false;
 			}
+		}
+	}
 
-			if (paths != null) {
-				for (StaticPath path : paths) {
-					if (path.getCoords() != null) {
-						InternalBoundingBox box = new InternalBoundingBox(path.getCoords());
-						double minDistance = box.getHeightMeters() / Math.max(getHeight(), getWidth());
-						builder.addParameter("path", path.formatFor(minDistance, 40));
-					} else {
-						builder.addParameter("path", path.formatFor(0, 0));
-					}
-				}
+	private static void writeJoined(QueryEncoder query, Iterable<String> values) throws IOException {
+		boolean first = true;
+		for (String value : values) {
+			if (!first)
+				query.append('|');
+			query.append(value);
+			first = false;
+		}
+	}
+
+	/**
+	 * @return the canonical locations, sorted and without duplicates
+	 */
+	private static SortedSet<String> canonicalize(List<? extends Location> locations, int decimals)
+			throws IOException {
+		SortedSet<String> canonical = new TreeSet<>();
+		StringBuilder location = new StringBuilder();
+		for (Location l : locations) {
+			location.setLength(0);
+			l.writeLocationTo(location, true, decimals);
+			canonical.add(location.toString());
+		}
+		return canonical;
+	}
+
+	/**
+	 * Dimensionen
+	 */
+	void writeSize(QueryEncoder query) throws IOException {
+		query.parameter("size").append(width).append('x').append(height);
+	}
+
+	private void writeCenter(QueryEncoder query) throws IOException {
+		if (center != null)
+			center.writeLocationTo(query.parameter("center"), canonical, coordinateDecimals());
+		if (zoom != null)
+			query.parameter("zoom", zoom);
+	}
+
+	void writeSettings(QueryEncoder query) throws IOException {
+		if (scale != 1)
+			query.parameter("scale", scale);
+		if (maptype != null && !(canonical && maptype == Maptype.roadmap))
+			query.parameter("maptype", maptype.name());
+		if (format != null && Format.PNG != format)
+			query.parameter("format", format.getValue());
+	}
+
+	/**
+	 * Visits everything the URL depends on apart from the map's own fields
+	 * (whose setters reset {@link #rendered}).
+	 */
+	private boolean acceptState(Snapshot.Visitor visitor) {
+		if (markerClustering != null && !visitor.visit(markerClustering, markerClustering.modCount()))
+			return false;
+		if (!visitor.visit(markers, markers != null ? markers.size() : 0))
+			return false;
+		if (markers != null) {
+			for (StaticMarker marker : markers) {
+				if (!visitor.visit(marker, marker.modCount()))
+					return false;
 			}
+		}
+		if (!visitor.visit(visibles, visibles != null ? visibles.size() : 0))
+			return false;
+		if (visibles != null) {
+			for (Location visible : visibles) {
+				if (!visitor.visit(visible, visible.modCount()))
+					return false;
+			}
+		}
+		if (!visitor.visit(paths, paths != null ? paths.size() : 0))
+			return false;
+		if (paths != null) {
+			for (StaticPath path : paths) {
+				if (!path.acceptState(visitor))
+					return false;
+			}
+		}
+		return true;
+	}
 
-			if (apiKey != null)
-				builder.addParameter("key", apiKey);
+	void writeSuffix(QueryEncoder query) throws IOException {
+		if (template != null) {
+			query.appendEncoded(template.getSuffix());
+			return;
+		}
 
-			if (language != null)
-				builder.addParameter("language", language);
+		if (apiKey != null)
+			query.parameter("key", apiKey);
 
-			if (region != null)
-				builder.addParameter("region", region);
+		if (language != null)
+			query.parameter("language", language);
 
-			String url = builder.build().toString();
+		if (region != null)
+			query.parameter("region", region);
+	}
 
-			// No need to encode those:
-			return url.replace("%3A", ":").replace("%40", "@");
-		} catch (URISyntaxException e) {
-			throw new RuntimeException("kann nicht sein", e);
+	/**
+	 * The polylines get whatever is left of {@link #getMaxUrlLength()} after
+	 * all other parameters (see {@link UrlBudget}).
+	 */
+	private void writePaths(QueryEncoder query, RenderScratch scratch) throws IOException {
+		QueryEncoder counter = QueryEncoder.counter();
+		writeSuffix(counter);
+		// deviations below one pixel are invisible
+		Viewport viewport = getViewport();
+		double minDistance = viewport != null ? viewport.getMetersPerPixel() : 0;
+
+		SimplifiedPath[] simplified = new SimplifiedPath[paths.size()];
+		int coordPaths = 0;
+		for (int i = 0; i < simplified.length; i++) {
+			StaticPath path = paths.get(i);
+			if (path.getBounds() != null) {
+				simplified[i] = path.simplify(minDistance);
+				coordPaths++;
+			}
+			// everything but the coordinates
+			path.formatTo(counter.parameter("path"), simplified[i], 0, scratch);
 		}
+		int available = maxUrlLength - query.length() - counter.length();
+
+		SimplifiedPath[] budgeted = new SimplifiedPath[coordPaths];
+		double[] weights = new double[coordPaths];
+		for (int i = 0, j = 0; i < simplified.length; i++) {
+			if (simplified[i] != null) {
+				budgeted[j] = simplified[i];
+				weights[j++] = paths.get(i).getPriority() * (double) simplified[i].size();
+			}
+		}
+		int[] points = UrlBudget.solve(budgeted, weights, available, scratch);
+
+		for (int i = 0, j = 0; i < simplified.length; i++) {
+			paths.get(i).formatTo(query.parameter("path"), simplified[i], simplified[i] != null ? points[j++] : 0,
+					scratch);
+		}
+	}
+
+	/**
+	 * @return center and zoom of the map and its resolution. null, if neither
+	 *         an explicit center nor any marker, visible or path has
+	 *         coordinates.
+	 */
+	public Viewport getViewport() {
+		BoundingBox box = new BoundingBox();
+		addTo(box, center);
+		if (markers != null) {
+			for (StaticMarker marker : markers)
+				addTo(box, marker);
+		}
+		if (visibles != null) {
+			for (Location visible : visibles)
+				addTo(box, visible);
+		}
+		if (paths != null) {
+			for (StaticPath path : paths) {
+				BoundingBox bounds = path.getBounds();
+				if (bounds != null)
+					box.add(bounds);
+			}
+		}
+		if (box.isEmpty())
+			return null;
+		return Viewport.of(box, center, zoom != null ? zoom : getZoom(), width, height, scale);
+	}
+
+	private static void addTo(BoundingBox box, Location location) {
+		if (location != null && !Double.isNaN(location.latitude()))
+			box.add(location.latitude(), location.longitude());
 	}
 
 	/**
 	 * @return If only one annotation present: the annotation's zoom. null,
-	 *         otherwise.
+	 *         otherwise. An explicit {@link #setZoom(Integer)} wins.
 	 */
 	private Integer getZoom() {
 		if ((markers != null && markers.size() == 1) && (paths == null || paths.size() == 0)) {
@@ -259,6 +845,8 @@ public class StaticMap implements Serializable {
 	}
 
 	public void setMaptype(Maptype maptype) {
+		rendered = null;
+		template = null;
 		this.maptype = maptype;
 	}
 
@@ -272,6 +860,8 @@ public class StaticMap implements Serializable {
 	 * @param format
 	 */
 	public void setFormat(Format format) {
+		rendered = null;
+		template = null;
 		this.format = format;
 	}
 
@@ -294,39 +884,87 @@ public class StaticMap implements Serializable {
 	}
 
 	public void setLangauge(Locale locale) {
+		rendered = null;
+		template = null;
 		this.language = locale.getLanguage();
 	}
 
 	public void setRegion(Locale locale) {
+		rendered = null;
+		template = null;
 		this.region = locale.getCountry();
 	}
 
 	/**
-	 * A geographic rectangle
+	 * Locations to be geocoded by Google and estimated parameter length of a
+	 * marker or visible list, together with the list, elements and modification
+	 * counters they have been computed from. Compared like a {@link Snapshot},
+	 * but extended in place when a location is added.
 	 */
-	private static class InternalBoundingBox {
-		private double latMin = Double.POSITIVE_INFINITY;
-		private double latMax = Double.NEGATIVE_INFINITY;
-		private double lonMin = Double.POSITIVE_INFINITY;
-		private double lonMax = Double.NEGATIVE_INFINITY;
+	private static final class LocationCounters {
+		private final int separatorLength;
+		private List<? extends Location> list;
+		private Location[] locations = new Location[16];
+		private int[] modCounts = new int[16];
+		int size;
+		int geocoded;
+		int length;
+
+		LocationCounters(int separatorLength) {
+			this.separatorLength = separatorLength;
+		}
+
+		/**
+		 * O(n), but without allocation.
+		 */
+		boolean matches(List<? extends Location> current) {
+			if (current != list || (current != null ? current.size() : 0) != size)
+				return false;
+			if (current != null) {
+				int i = 0;
+				for (Location location : current) {
+					if (location != locations[i] || location.modCount() != modCounts[i])
+						return false;
+					i++;
+				}
+			}
+			return true;
+		}
+
+		void recount(List<? extends Location> current) {
+			list = current;
+			size = 0;
+			geocoded = 0;
+			length = 0;
+			if (current != null) {
+				for (Location location : current)
+					add(location);
+			}
+		}
 
-		protected InternalBoundingBox(Collection<? extends LatLon> coords) {
-			for (LatLon coord : coords) {
-				if (coord.getLatitude() > latMax)
-					latMax = coord.getLatitude();
-				if (coord.getLatitude() < latMin)
-					latMin = coord.getLatitude();
-				if (coord.getLongitude() > lonMax)
-					lonMax = coord.getLongitude();
-				if (coord.getLongitude() < lonMin)
-					lonMin = coord.getLongitude();
+		/**
+		 * Counts a location appended to the list.
+		 */
+		void add(Location location) {
+			if (size == locations.length) {
+				locations = Arrays.copyOf(locations, size * 2);
+				modCounts = Arrays.copyOf(modCounts, size * 2);
 			}
+			locations[size] = location;
+			modCounts[size++] = location.modCount();
+			if (location.isGeocodingRequired())
+				geocoded++;
+			length += estimateLength(location) + separatorLength;
 		}
+	}
+
+	private static final class RenderedUrl {
+		private final String url;
+		private final Snapshot state;
 
-		protected double getHeightMeters() {
-			LatLon upperLeft = new LatLonImpl(latMax, lonMin);
-			LatLon bottomLeft = new LatLonImpl(latMin, lonMin);
-			return StaticPath.distanceAuto(upperLeft, bottomLeft);
+		RenderedUrl(String url, Snapshot state) {
+			this.url = url;
+			this.state = state;
 		}
 	}
 }
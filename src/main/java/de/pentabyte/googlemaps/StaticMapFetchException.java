@@ -0,0 +1,20 @@
+package de.pentabyte.googlemaps;
+
+import java.io.IOException;
+
+/**
+ * Google answered with an HTTP status other than 200.
+ */
+public class StaticMapFetchException extends IOException {
+	private static final long serialVersionUID = 6014339575061962045L;
+	private final int statusCode;
+
+	public StaticMapFetchException(int statusCode, String message) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+}
@@ -0,0 +1,266 @@
+package de.pentabyte.googlemaps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads map images. Thread safe, meant to be shared by a whole
+ * application:
+ * <ul>
+ * <li>Connections are kept alive and reused by the JDK's HTTP connection
+ * cache (system properties http.keepAlive and http.maxConnections), which is
+ * why response bodies are always read completely.</li>
+ * <li>No more than maxConcurrency requests will be in progress at any
+ * time.</li>
+ * <li>Timeouts and failed connections, 429 (Too Many Requests) and 5xx
+ * responses are retried with exponential backoff and full jitter, respecting
+ * Retry-After.</li>
+ * <li>Images are streamed to their destination, never buffered as a
+ * whole.</li>
+ * </ul>
+ */
+public class StaticMapFetcher {
+	private final Semaphore permits;
+	private int connectTimeoutMillis = 5000;
+	private int readTimeoutMillis = 10000;
+	private int maxRetries = 3;
+	private long backoffMillis = 250;
+	private long maxBackoffMillis = 10000;
+
+	/**
+	 * Up to 8 concurrent requests.
+	 */
+	public StaticMapFetcher() {
+		this(8);
+	}
+
+	/**
+	 * @param maxConcurrency maximum number of requests in progress at the same
+	 *                       time
+	 */
+	public StaticMapFetcher(int maxConcurrency) {
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("maxConcurrency must be positive");
+		this.permits = new Semaphore(maxConcurrency, true);
+	}
+
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	/**
+	 * Default: 5000.
+	 */
+	public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	public int getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	/**
+	 * Default: 10000.
+	 */
+	public void setReadTimeoutMillis(int readTimeoutMillis) {
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Default: 3.
+	 */
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public long getBackoffMillis() {
+		return backoffMillis;
+	}
+
+	/**
+	 * Default: 250. Retry n waits a random time between 0 and
+	 * backoffMillis * 2^n, but no longer than maxBackoffMillis.
+	 */
+	public void setBackoffMillis(long backoffMillis) {
+		this.backoffMillis = backoffMillis;
+	}
+
+	public long getMaxBackoffMillis() {
+		return maxBackoffMillis;
+	}
+
+	/**
+	 * Default: 10000.
+	 */
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	/**
+	 * @return the image
+	 */
+	public byte[] fetch(StaticMap map) throws IOException {
+		return fetch(map.toString());
+	}
+
+	/**
+	 * @return the image
+	 */
+	public byte[] fetch(String url) throws IOException {
+		ByteArrayOutputStream image = new ByteArrayOutputStream(16 * 1024);
+		fetch(url, image);
+		return image.toByteArray();
+	}
+
+	/**
+	 * Writes the image to the given file. The file will only be replaced if
+	 * the download succeeds.
+	 */
+	public void fetch(StaticMap map, Path target) throws IOException {
+		Path directory = target.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".part");
+		try {
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				fetch(map.toString(), out);
+			}
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	public void fetch(StaticMap map, OutputStream out) throws IOException {
+		fetch(map.toString(), out);
+	}
+
+	/**
+	 * Streams the image into out. Failures are only retried until the first
+	 * byte has been written.
+	 * 
+	 * @throws StaticMapFetchException if Google does not deliver an image
+	 */
+	public void fetch(String url, OutputStream out) throws IOException {
+		for (int attempt = 0;; attempt++) {
+			long retryAfterMillis = 0;
+			acquire();
+			try {
+				HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+				connection.setConnectTimeout(connectTimeoutMillis);
+				connection.setReadTimeout(readTimeoutMillis);
+				int status;
+				try {
+					status = connection.getResponseCode();
+				} catch (IOException e) {
+					if (attempt >= maxRetries)
+						throw e;
+					status = -1;
+				}
+
+				if (status == HttpURLConnection.HTTP_OK) {
+					try (InputStream in = connection.getInputStream()) {
+						copy(in, out);
+					}
+					return;
+				}
+
+				if (status != -1) {
+					discard(connection);
+					if (!isRetryable(status) || attempt >= maxRetries)
+						throw new StaticMapFetchException(status,
+								"HTTP " + status + " for URL [" + hideApiKey(url) + "]");
+					retryAfterMillis = retryAfterMillis(connection);
+				}
+			} finally {
+				permits.release();
+			}
+			sleep(Math.max(retryAfterMillis, backoff(attempt)));
+		}
+	}
+
+	/**
+	 * Too Many Requests or any server error.
+	 */
+	protected boolean isRetryable(int status) {
+		return status == 429 || status >= 500;
+	}
+
+	private long backoff(int attempt) {
+		long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt, 30));
+		return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+	}
+
+	/**
+	 * @return 0, if there is no (numeric) Retry-After header.
+	 */
+	private long retryAfterMillis(HttpURLConnection connection) {
+		String retryAfter = connection.getHeaderField("Retry-After");
+		if (retryAfter == null)
+			return 0;
+		try {
+			return Math.min(maxBackoffMillis, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private void acquire() throws InterruptedIOException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a connection");
+		}
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a retry");
+		}
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+	}
+
+	/**
+	 * Reads the error body, so the connection can be reused.
+	 */
+	private static void discard(HttpURLConnection connection) {
+		try (InputStream in = connection.getErrorStream()) {
+			if (in != null) {
+				byte[] buffer = new byte[1024];
+				while (in.read(buffer) != -1) {
+					// discard
+				}
+			}
+		} catch (IOException e) {
+			// connection will not be reused
+		}
+	}
+
+	private static String hideApiKey(String url) {
+		return url.replaceAll("([?&]key=)[^&]*", "$1*****");
+	}
+}
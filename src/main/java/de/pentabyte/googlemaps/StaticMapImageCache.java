@@ -0,0 +1,639 @@
+package de.pentabyte.googlemaps;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the images of a {@link StaticMapFetcher} in two tiers:
+ * <ul>
+ * <li>a byte-bounded LRU cache on the heap</li>
+ * <li>optionally a byte-bounded LRU cache on disk. Files are read memory
+ * mapped or transferred to the destination channel without copying them
+ * through the heap.</li>
+ * </ul>
+ * Maps are identified by their URL without API key and signature, so every
+ * key shares the same cache. Thread safe: concurrent requests for the same
+ * image share a single download.
+ *
+ * <pre>
+ * StaticMapImageCache cache = StaticMapImageCache.builder(new StaticMapFetcher())
+ * 		.maxHeapBytes(16 &lt;&lt; 20).disk(Paths.get("/var/cache/maps"), 1L &lt;&lt; 30)
+ * 		.ttl(7, TimeUnit.DAYS).build();
+ * byte[] image = cache.get(map);
+ * </pre>
+ */
+public class StaticMapImageCache {
+	private static final String FILE_SUFFIX = ".img";
+	private static final Pattern CREDENTIALS = Pattern.compile("[?&](key|signature)=[^&]*");
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	/**
+	 * lookups per request before an image which keeps being evicted is
+	 * downloaded without the cache
+	 */
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final StaticMapFetcher fetcher;
+	private final long maxHeapBytes;
+	/**
+	 * null: no disk tier
+	 */
+	private final Path directory;
+	private final long maxDiskBytes;
+	private final long ttlMillis;
+	private final Clock clock;
+
+	/**
+	 * access ordered, guarded by itself
+	 */
+	private final LinkedHashMap<String, HeapEntry> heap = new LinkedHashMap<>(16, 0.75f, true);
+	private long heapBytes;
+	/**
+	 * access ordered, guarded by itself
+	 */
+	private final LinkedHashMap<String, DiskEntry> disk = new LinkedHashMap<>(16, 0.75f, true);
+	private long diskBytes;
+
+	/**
+	 * downloads in progress, concurrent requests for the same image wait for
+	 * them instead of downloading it again
+	 */
+	private final ConcurrentHashMap<String, CompletableFuture<byte[]>> downloads = new ConcurrentHashMap<>();
+
+	private final LongAdder heapHits = new LongAdder();
+	private final LongAdder diskHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+
+	private static final class HeapEntry {
+		final byte[] image;
+		final long created;
+
+		HeapEntry(byte[] image, long created) {
+			this.image = image;
+			this.created = created;
+		}
+	}
+
+	private static final class DiskEntry {
+		final long size;
+		final long created;
+
+		DiskEntry(long size, long created) {
+			this.size = size;
+			this.created = created;
+		}
+	}
+
+	private StaticMapImageCache(Builder builder) throws IOException {
+		this.fetcher = builder.fetcher;
+		this.maxHeapBytes = builder.maxHeapBytes;
+		this.directory = builder.directory;
+		this.maxDiskBytes = builder.maxDiskBytes;
+		this.ttlMillis = builder.ttlMillis;
+		this.clock = builder.clock;
+		if (directory != null)
+			loadDirectory();
+	}
+
+	public static Builder builder(StaticMapFetcher fetcher) {
+		return new Builder(fetcher);
+	}
+
+	/**
+	 * @return the map's image, downloaded only if it is not cached.
+	 */
+	public byte[] get(StaticMap map) throws IOException {
+		String key = key(map.toString());
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			byte[] image = getFromHeap(key);
+			if (image != null) {
+				heapHits.increment();
+				return image;
+			}
+
+			Path file = getFromDisk(key);
+			if (file != null) {
+				image = readMapped(file);
+				if (image != null) {
+					diskHits.increment();
+					putInHeap(key, image);
+					return image;
+				}
+				removeFromDisk(key);
+			}
+
+			CompletableFuture<byte[]> download = new CompletableFuture<>();
+			CompletableFuture<byte[]> running = downloads.putIfAbsent(key, download);
+			if (running == null) {
+				image = lead(key, download, () -> {
+					byte[] fetched = fetcher.fetch(map);
+					putInHeap(key, fetched);
+					if (directory != null)
+						putOnDisk(key, fetched);
+					return fetched;
+				});
+			} else {
+				image = follow(running);
+			}
+			if (image == null)
+				image = readMapped(file(key));
+			if (image != null)
+				return image;
+			// evicted meanwhile
+		}
+		return fetchUncached(map);
+	}
+
+	/**
+	 * Writes the map's image to out, see
+	 * {@link #transferTo(StaticMap, WritableByteChannel)}.
+	 */
+	public void writeTo(StaticMap map, OutputStream out) throws IOException {
+		transferTo(map, Channels.newChannel(out));
+	}
+
+	/**
+	 * Writes the map's image to out. Images from the disk tier (and downloads,
+	 * if there is a disk tier) will be transferred by the file system, without
+	 * copying them to the heap.
+	 */
+	public void transferTo(StaticMap map, WritableByteChannel out) throws IOException {
+		String key = key(map.toString());
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			byte[] image = getFromHeap(key);
+			if (image != null) {
+				heapHits.increment();
+				write(ByteBuffer.wrap(image), out);
+				return;
+			}
+
+			Path file = getFromDisk(key);
+			if (file != null) {
+				if (transfer(file, out)) {
+					diskHits.increment();
+					return;
+				}
+				removeFromDisk(key);
+			}
+
+			CompletableFuture<byte[]> download = new CompletableFuture<>();
+			CompletableFuture<byte[]> running = downloads.putIfAbsent(key, download);
+			if (running == null) {
+				image = lead(key, download, () -> {
+					if (directory != null)
+						return downloadToDisk(map, key);
+					byte[] fetched = fetcher.fetch(map);
+					putInHeap(key, fetched);
+					return fetched;
+				});
+			} else {
+				image = follow(running);
+			}
+			if (image != null) {
+				write(ByteBuffer.wrap(image), out);
+				return;
+			}
+			if (transfer(file(key), out))
+				return;
+			// evicted meanwhile
+		}
+		write(ByteBuffer.wrap(fetchUncached(map)), out);
+	}
+
+	/**
+	 * Last resort if other threads evict the image again and again before it
+	 * can be read.
+	 */
+	private byte[] fetchUncached(StaticMap map) throws IOException {
+		misses.increment();
+		return fetcher.fetch(map);
+	}
+
+	@FunctionalInterface
+	private interface Download {
+		/**
+		 * @return the image, or null if it has only been stored on disk
+		 */
+		byte[] run() throws IOException;
+	}
+
+	/**
+	 * Downloads the image for all threads waiting for download.
+	 * 
+	 * @return the image, or null if it is on disk
+	 */
+	private byte[] lead(String key, CompletableFuture<byte[]> download, Download action) throws IOException {
+		try {
+			// another download may have finished since the lookup
+			byte[] image = getFromHeap(key);
+			if (image == null && getFromDisk(key) == null) {
+				misses.increment();
+				image = action.run();
+			}
+			download.complete(image);
+			return image;
+		} catch (Throwable e) {
+			download.completeExceptionally(e);
+			throw e;
+		} finally {
+			downloads.remove(key, download);
+		}
+	}
+
+	/**
+	 * Waits for another thread's download.
+	 * 
+	 * @return the image, or null if it is on disk
+	 */
+	private byte[] follow(CompletableFuture<byte[]> download) throws IOException {
+		coalesced.increment();
+		try {
+			return download.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a download");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Removes all images from the heap and from disk.
+	 */
+	public void clear() throws IOException {
+		synchronized (heap) {
+			heap.clear();
+			heapBytes = 0;
+		}
+		List<String> keys;
+		synchronized (disk) {
+			keys = new ArrayList<>(disk.keySet());
+		}
+		for (String key : keys)
+			removeFromDisk(key);
+	}
+
+	/**
+	 * @return images found on the heap
+	 */
+	public long getHeapHits() {
+		return heapHits.sum();
+	}
+
+	/**
+	 * @return images found on disk (but not on the heap)
+	 */
+	public long getDiskHits() {
+		return diskHits.sum();
+	}
+
+	/**
+	 * @return images that had to be downloaded
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return requests which waited for another thread's download of the same
+	 *         image instead of downloading it themselves
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * @return images removed from either tier to make room
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getHeapBytes() {
+		synchronized (heap) {
+			return heapBytes;
+		}
+	}
+
+	public long getDiskBytes() {
+		synchronized (disk) {
+			return diskBytes;
+		}
+	}
+
+	/**
+	 * @return hex encoded SHA-256 of the URL without key and signature
+	 */
+	static String key(String url) {
+		String query = CREDENTIALS.matcher(url).replaceAll("");
+		if (query.indexOf('?') < 0)
+			query = query.replaceFirst("&", "?");
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8));
+			char[] hex = new char[hash.length * 2];
+			for (int i = 0; i < hash.length; i++) {
+				hex[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+				hex[2 * i + 1] = HEX[hash[i] & 0xF];
+			}
+			return new String(hex);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+	}
+
+	private boolean isExpired(long created) {
+		return clock.millis() - created >= ttlMillis;
+	}
+
+	private byte[] getFromHeap(String key) {
+		synchronized (heap) {
+			HeapEntry entry = heap.get(key);
+			if (entry == null)
+				return null;
+			if (isExpired(entry.created)) {
+				heap.remove(key);
+				heapBytes -= entry.image.length;
+				return null;
+			}
+			return entry.image;
+		}
+	}
+
+	private void putInHeap(String key, byte[] image) {
+		if (image.length > maxHeapBytes)
+			return;
+		synchronized (heap) {
+			HeapEntry previous = heap.put(key, new HeapEntry(image, clock.millis()));
+			if (previous != null)
+				heapBytes -= previous.image.length;
+			heapBytes += image.length;
+			Iterator<HeapEntry> eldest = heap.values().iterator();
+			while (heapBytes > maxHeapBytes) {
+				heapBytes -= eldest.next().image.length;
+				eldest.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	/**
+	 * @return null, if not on disk or expired
+	 */
+	private Path getFromDisk(String key) throws IOException {
+		if (directory == null)
+			return null;
+		synchronized (disk) {
+			DiskEntry entry = disk.get(key);
+			if (entry == null)
+				return null;
+			if (!isExpired(entry.created))
+				return file(key);
+		}
+		removeFromDisk(key);
+		return null;
+	}
+
+	/**
+	 * Downloads next to the disk tier's files, so the image joins it without
+	 * being copied.
+	 * 
+	 * @return null, if the image is on disk now. The image itself, if it is
+	 *         larger than the disk tier.
+	 */
+	private byte[] downloadToDisk(StaticMap map, String key) throws IOException {
+		Path temp = Files.createTempFile(directory, key, ".part");
+		try {
+			fetcher.fetch(map, temp);
+			long size = Files.size(temp);
+			if (size > maxDiskBytes) {
+				byte[] image = readMapped(temp);
+				putInHeap(key, image);
+				return image;
+			}
+			Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			addToDisk(key, size);
+			return null;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private void putOnDisk(String key, byte[] image) throws IOException {
+		if (image.length > maxDiskBytes)
+			return;
+		Path temp = Files.createTempFile(directory, key, ".part");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				write(ByteBuffer.wrap(image), channel);
+			}
+			Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		addToDisk(key, image.length);
+	}
+
+	private void addToDisk(String key, long size) throws IOException {
+		List<String> evicted = new ArrayList<>();
+		synchronized (disk) {
+			DiskEntry previous = disk.put(key, new DiskEntry(size, clock.millis()));
+			if (previous != null)
+				diskBytes -= previous.size;
+			diskBytes += size;
+			Iterator<Map.Entry<String, DiskEntry>> eldest = disk.entrySet().iterator();
+			while (diskBytes > maxDiskBytes) {
+				Map.Entry<String, DiskEntry> entry = eldest.next();
+				diskBytes -= entry.getValue().size;
+				eldest.remove();
+				evicted.add(entry.getKey());
+			}
+		}
+		for (String e : evicted) {
+			// open channels keep reading a deleted file
+			Files.deleteIfExists(file(e));
+			evictions.increment();
+		}
+	}
+
+	private void removeFromDisk(String key) throws IOException {
+		synchronized (disk) {
+			DiskEntry entry = disk.remove(key);
+			if (entry == null)
+				return;
+			diskBytes -= entry.size;
+		}
+		Files.deleteIfExists(file(key));
+	}
+
+	private Path file(String key) {
+		return directory.resolve(key + FILE_SUFFIX);
+	}
+
+	/**
+	 * Registers the files of a previous run, oldest first.
+	 */
+	private void loadDirectory() throws IOException {
+		Files.createDirectories(directory);
+		Map<Path, Long> modified = new HashMap<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+			for (Path file : stream)
+				modified.put(file, Files.getLastModifiedTime(file).toMillis());
+		}
+		List<Path> files = new ArrayList<>(modified.keySet());
+		files.sort(Comparator.comparing(modified::get));
+
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			String key = name.substring(0, name.length() - FILE_SUFFIX.length());
+			long created = modified.get(file);
+			if (isExpired(created)) {
+				Files.deleteIfExists(file);
+				continue;
+			}
+			long size = Files.size(file);
+			synchronized (disk) {
+				disk.put(key, new DiskEntry(size, created));
+				diskBytes += size;
+			}
+		}
+		synchronized (disk) {
+			Iterator<Map.Entry<String, DiskEntry>> eldest = disk.entrySet().iterator();
+			while (diskBytes > maxDiskBytes) {
+				Map.Entry<String, DiskEntry> entry = eldest.next();
+				diskBytes -= entry.getValue().size;
+				eldest.remove();
+				Files.deleteIfExists(file(entry.getKey()));
+			}
+		}
+	}
+
+	/**
+	 * @return null, if the file has been evicted meanwhile
+	 */
+	private static byte[] readMapped(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			byte[] image = new byte[buffer.remaining()];
+			buffer.get(image);
+			return image;
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return false, if the file has been evicted meanwhile
+	 */
+	private static boolean transfer(Path file, WritableByteChannel out) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long position = 0; position < size;)
+				position += channel.transferTo(position, size - position, out);
+			return true;
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+	}
+
+	private static void write(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+		while (buffer.hasRemaining())
+			out.write(buffer);
+	}
+
+	/**
+	 * Not thread safe.
+	 */
+	public static final class Builder {
+		private final StaticMapFetcher fetcher;
+		private long maxHeapBytes = 32 << 20;
+		private Path directory;
+		private long maxDiskBytes;
+		private long ttlMillis = Long.MAX_VALUE;
+		private Clock clock = Clock.systemUTC();
+
+		private Builder(StaticMapFetcher fetcher) {
+			this.fetcher = fetcher;
+		}
+
+		/**
+		 * Default: 32 MiB. 0 disables the heap tier.
+		 */
+		public Builder maxHeapBytes(long maxHeapBytes) {
+			if (maxHeapBytes < 0)
+				throw new IllegalArgumentException("maxHeapBytes must not be negative");
+			this.maxHeapBytes = maxHeapBytes;
+			return this;
+		}
+
+		/**
+		 * Enables the disk tier. Images of previous runs in directory will be
+		 * reused.
+		 */
+		public Builder disk(Path directory, long maxDiskBytes) {
+			if (maxDiskBytes < 0)
+				throw new IllegalArgumentException("maxDiskBytes must not be negative");
+			this.directory = directory;
+			this.maxDiskBytes = maxDiskBytes;
+			return this;
+		}
+
+		/**
+		 * Images will be downloaded again after the given time. Default: never.
+		 */
+		public Builder ttl(long duration, TimeUnit unit) {
+			if (duration <= 0)
+				throw new IllegalArgumentException("ttl must be positive");
+			this.ttlMillis = unit.toMillis(duration);
+			return this;
+		}
+
+		Builder clock(Clock clock) {
+			this.clock = clock;
+			return this;
+		}
+
+		/**
+		 * @throws IOException if the disk tier's directory cannot be read
+		 */
+		public StaticMapImageCache build() throws IOException {
+			return new StaticMapImageCache(this);
+		}
+	}
+}
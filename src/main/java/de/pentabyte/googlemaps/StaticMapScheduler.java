@@ -0,0 +1,384 @@
+package de.pentabyte.googlemaps;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps downloads within Google's quotas: requests wait in a queue per
+ * {@link Priority} and are passed to the {@link StaticMapFetcher} no faster
+ * than a token bucket allows. Interactive requests always go first, so batch
+ * jobs may use the whole rate without delaying users.
+ * 
+ * <pre>
+ * StaticMapScheduler scheduler = StaticMapScheduler.builder(new StaticMapFetcher(), 50).dailyQuota(100_000).build();
+ * byte[] image = scheduler.submit(map, Priority.INTERACTIVE, 2, TimeUnit.SECONDS).get();
+ * </pre>
+ * 
+ * Thread safe. Requests are dispatched by a single daemon thread; call
+ * {@link #close()} to stop it.
+ */
+public class StaticMapScheduler implements AutoCloseable {
+	public enum Priority {
+		/**
+		 * user-facing, dispatched before any batch request
+		 */
+		INTERACTIVE,
+		/**
+		 * background work, dispatched only when no interactive request is
+		 * waiting
+		 */
+		BATCH
+	}
+
+	private final StaticMapFetcher fetcher;
+	private final ExecutorService executor;
+	private final TokenBucket rate;
+	/**
+	 * null: no daily quota
+	 */
+	private final TokenBucket quota;
+	private final int[] maxQueued;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	/**
+	 * indexed by {@link Priority#ordinal()}, guarded by lock
+	 */
+	private final ArrayDeque<Request>[] queues;
+	private final Stats[] stats;
+	private final Thread dispatcher;
+	private boolean closed;
+
+	private static final class Request {
+		final String url;
+		final Priority priority;
+		final long enqueued;
+		final long deadline;
+		final CompletableFuture<byte[]> image = new CompletableFuture<>();
+
+		Request(String url, Priority priority, long enqueued, long deadline) {
+			this.url = url;
+			this.priority = priority;
+			this.enqueued = enqueued;
+			this.deadline = deadline;
+		}
+	}
+
+	private static final class Stats {
+		final LongAdder dispatched = new LongAdder();
+		final LongAdder rejected = new LongAdder();
+		final LongAdder shed = new LongAdder();
+		final LongAdder waitNanos = new LongAdder();
+		final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private StaticMapScheduler(Builder builder) {
+		this.fetcher = builder.fetcher;
+		long now = System.nanoTime();
+		this.rate = new TokenBucket(builder.permitsPerSecond, builder.burst, now);
+		this.quota = builder.dailyQuota > 0
+				? new TokenBucket(builder.dailyQuota / (double) TimeUnit.DAYS.toSeconds(1), builder.dailyQuota, now)
+				: null;
+		this.maxQueued = builder.maxQueued.clone();
+		int priorities = Priority.values().length;
+		this.queues = new ArrayDeque[priorities];
+		this.stats = new Stats[priorities];
+		for (int i = 0; i < priorities; i++) {
+			queues[i] = new ArrayDeque<>();
+			stats[i] = new Stats();
+		}
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "StaticMapScheduler-fetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.dispatcher = new Thread(this::dispatch, "StaticMapScheduler");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * @param permitsPerSecond maximum sustained request rate
+	 */
+	public static Builder builder(StaticMapFetcher fetcher, double permitsPerSecond) {
+		return new Builder(fetcher, permitsPerSecond);
+	}
+
+	/**
+	 * Queues a request without deadline.
+	 * 
+	 * @see #submit(StaticMap, Priority, long, TimeUnit)
+	 */
+	public CompletableFuture<byte[]> submit(StaticMap map, Priority priority) {
+		return submit(map, priority, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Queues a request. The map's URL is rendered right away, so the map may be
+	 * changed afterwards.
+	 * 
+	 * @param timeout maximum time to wait for the download to start
+	 * @return the image. Fails with a {@link RejectedExecutionException} if the
+	 *         queue is full, with a {@link TimeoutException} if the download
+	 *         could not be started in time.
+	 */
+	public CompletableFuture<byte[]> submit(StaticMap map, Priority priority, long timeout, TimeUnit unit) {
+		String url = map.toString();
+		long now = System.nanoTime();
+		long nanos = unit.toNanos(timeout);
+		long deadline = now + nanos < now ? Long.MAX_VALUE : now + nanos;
+		Request request = new Request(url, priority, now, deadline);
+		ArrayDeque<Request> queue = queues[priority.ordinal()];
+		lock.lock();
+		try {
+			if (closed || queue.size() >= maxQueued[priority.ordinal()]) {
+				stats[priority.ordinal()].rejected.increment();
+				request.image.completeExceptionally(
+						new RejectedExecutionException(closed ? "scheduler closed" : priority + " queue full"));
+			} else {
+				queue.add(request);
+				changed.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+		return request.image;
+	}
+
+	private void dispatch() {
+		try {
+			for (;;) {
+				Request request;
+				lock.lock();
+				try {
+					for (;;) {
+						if (closed)
+							return;
+						long now = System.nanoTime();
+						long untilDeadline = shedExpired(now);
+						if (isEmpty()) {
+							changed.await();
+							continue;
+						}
+						long wait = rate.nanosUntilAvailable(now);
+						if (quota != null)
+							wait = Math.max(wait, quota.nanosUntilAvailable(now));
+						if (wait > 0) {
+							// shed requests as soon as they expire
+							changed.awaitNanos(Math.min(wait, untilDeadline));
+							continue;
+						}
+						request = poll();
+						rate.take();
+						if (quota != null)
+							quota.take();
+						break;
+					}
+				} finally {
+					lock.unlock();
+				}
+
+				Stats s = stats[request.priority.ordinal()];
+				long waited = System.nanoTime() - request.enqueued;
+				s.dispatched.increment();
+				s.waitNanos.add(waited);
+				s.maxWaitNanos.accumulate(waited);
+				executor.execute(() -> fetch(request));
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	private void fetch(Request request) {
+		try {
+			request.image.complete(fetcher.fetch(request.url));
+		} catch (Throwable e) {
+			request.image.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * @return highest priority request first
+	 */
+	private Request poll() {
+		for (ArrayDeque<Request> queue : queues) {
+			if (!queue.isEmpty())
+				return queue.poll();
+		}
+		return null;
+	}
+
+	private boolean isEmpty() {
+		for (ArrayDeque<Request> queue : queues) {
+			if (!queue.isEmpty())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes requests which missed their deadline or have been cancelled.
+	 * 
+	 * @return time until the next deadline
+	 */
+	private long shedExpired(long now) {
+		long untilDeadline = Long.MAX_VALUE;
+		for (ArrayDeque<Request> queue : queues) {
+			Iterator<Request> requests = queue.iterator();
+			while (requests.hasNext()) {
+				Request request = requests.next();
+				long remaining = request.deadline - now;
+				if (request.image.isDone()) {
+					requests.remove();
+				} else if (remaining <= 0) {
+					requests.remove();
+					stats[request.priority.ordinal()].shed.increment();
+					request.image.completeExceptionally(new TimeoutException("not started within deadline"));
+				} else {
+					untilDeadline = Math.min(untilDeadline, remaining);
+				}
+			}
+		}
+		return untilDeadline;
+	}
+
+	/**
+	 * @return number of requests waiting
+	 */
+	public int getQueueDepth(Priority priority) {
+		lock.lock();
+		try {
+			return queues[priority.ordinal()].size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return requests passed to the fetcher
+	 */
+	public long getDispatched(Priority priority) {
+		return stats[priority.ordinal()].dispatched.sum();
+	}
+
+	/**
+	 * @return requests refused because the queue was full
+	 */
+	public long getRejected(Priority priority) {
+		return stats[priority.ordinal()].rejected.sum();
+	}
+
+	/**
+	 * @return requests dropped because they could not be started before their
+	 *         deadline
+	 */
+	public long getShed(Priority priority) {
+		return stats[priority.ordinal()].shed.sum();
+	}
+
+	/**
+	 * @return average time dispatched requests spent in the queue
+	 */
+	public double getAverageWaitMillis(Priority priority) {
+		Stats s = stats[priority.ordinal()];
+		long dispatched = s.dispatched.sum();
+		return dispatched == 0 ? 0 : s.waitNanos.sum() / 1e6 / dispatched;
+	}
+
+	/**
+	 * @return longest time a dispatched request spent in the queue
+	 */
+	public double getMaxWaitMillis(Priority priority) {
+		return stats[priority.ordinal()].maxWaitNanos.get() / 1e6;
+	}
+
+	/**
+	 * Rejects all waiting requests. Downloads in progress will be completed.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			for (ArrayDeque<Request> queue : queues) {
+				for (Request request : queue)
+					request.image.completeExceptionally(new RejectedExecutionException("scheduler closed"));
+				queue.clear();
+			}
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Not thread safe.
+	 */
+	public static final class Builder {
+		private final StaticMapFetcher fetcher;
+		private final double permitsPerSecond;
+		private double burst;
+		private long dailyQuota;
+		private final int[] maxQueued = new int[Priority.values().length];
+
+		private Builder(StaticMapFetcher fetcher, double permitsPerSecond) {
+			if (!(permitsPerSecond > 0))
+				throw new IllegalArgumentException("permitsPerSecond must be positive");
+			this.fetcher = fetcher;
+			this.permitsPerSecond = permitsPerSecond;
+			this.burst = Math.max(1, permitsPerSecond);
+			maxQueued[Priority.INTERACTIVE.ordinal()] = 1000;
+			maxQueued[Priority.BATCH.ordinal()] = 10000;
+		}
+
+		/**
+		 * Default: one second's worth of requests.
+		 * 
+		 * @param burst requests which may be sent at once after an idle period
+		 */
+		public Builder burst(int burst) {
+			if (burst < 1)
+				throw new IllegalArgumentException("burst must be at least 1");
+			this.burst = burst;
+			return this;
+		}
+
+		/**
+		 * Spreads the given number of requests evenly over a day (allowing all
+		 * of them as a burst). Default: unlimited.
+		 */
+		public Builder dailyQuota(long dailyQuota) {
+			if (dailyQuota < 1)
+				throw new IllegalArgumentException("dailyQuota must be positive");
+			this.dailyQuota = dailyQuota;
+			return this;
+		}
+
+		/**
+		 * Default: 1000 interactive and 10000 batch requests.
+		 */
+		public Builder maxQueued(Priority priority, int maxQueued) {
+			if (maxQueued < 0)
+				throw new IllegalArgumentException("maxQueued must not be negative");
+			this.maxQueued[priority.ordinal()] = maxQueued;
+			return this;
+		}
+
+		public StaticMapScheduler build() {
+			return new StaticMapScheduler(this);
+		}
+	}
+}
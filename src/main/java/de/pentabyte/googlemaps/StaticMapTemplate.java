@@ -0,0 +1,185 @@
+package de.pentabyte.googlemaps;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Locale;
+
+import de.pentabyte.googlemaps.StaticMap.Maptype;
+
+/**
+ * Immutable settings shared by many maps: size, scale, maptype, format, key,
+ * language and region. They will be encoded only once; maps created by
+ * {@link #newMap()} merely add their own center, markers, visibles and paths.
+ * Templates are thread safe and meant to be shared, e.g. as constants.
+ * 
+ * <pre>
+ * static final StaticMapTemplate THUMBNAIL = StaticMapTemplate.builder(200, 200, apiKey)
+ * 		.maptype(Maptype.hybrid).scale(2).build();
+ * 
+ * StaticMap map = THUMBNAIL.newMap();
+ * map.addMarker(new StaticMarker(48.853, 2.349983));
+ * </pre>
+ * 
+ * URLs of template based maps list the template's parameters first; the
+ * parameter order differs from a map configured via setters.
+ */
+public final class StaticMapTemplate implements Serializable {
+	private static final long serialVersionUID = -6375519245818738235L;
+	private final StaticMap settings;
+	/**
+	 * URL up to and including the format parameter
+	 */
+	private final String prefix;
+	/**
+	 * key, language and region parameters (each starting with '&amp;')
+	 */
+	private final String suffix;
+
+	private StaticMapTemplate(StaticMap settings) {
+		this.settings = new StaticMap(settings, null);
+		try {
+			StringBuilder url = new StringBuilder(128);
+			QueryEncoder query = new QueryEncoder(url, StaticMap.API_URL);
+			this.settings.writeSize(query);
+			this.settings.writeSettings(query);
+			this.prefix = url.toString();
+
+			url.setLength(0);
+			this.settings.writeSuffix(new QueryEncoder(url, "", true));
+			this.suffix = url.toString();
+		} catch (IOException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+	}
+
+	/**
+	 * @param width  points
+	 * @param height points
+	 * @param apiKey
+	 */
+	public static Builder builder(int width, int height, String apiKey) {
+		return new Builder(width, height, apiKey);
+	}
+
+	/**
+	 * @return a new, empty map with the template's settings. Changing one of
+	 *         those settings on the map is allowed, it just loses the
+	 *         pre-rendered parameters.
+	 */
+	public StaticMap newMap() {
+		return new StaticMap(settings, this);
+	}
+
+	public int getWidth() {
+		return settings.getWidth();
+	}
+
+	public int getHeight() {
+		return settings.getHeight();
+	}
+
+	public int getScale() {
+		return settings.getScale();
+	}
+
+	public Maptype getMaptype() {
+		return settings.getMaptype();
+	}
+
+	public Format getFormat() {
+		return settings.getFormat();
+	}
+
+	public int getMaxUrlLength() {
+		return settings.getMaxUrlLength();
+	}
+
+	public boolean isCanonical() {
+		return settings.isCanonical();
+	}
+
+	public int getCoordinateDecimals() {
+		return settings.getCoordinateDecimals();
+	}
+
+	String getPrefix() {
+		return prefix;
+	}
+
+	String getSuffix() {
+		return suffix;
+	}
+
+	/**
+	 * Not thread safe.
+	 */
+	public static final class Builder {
+		private final StaticMap settings;
+
+		private Builder(int width, int height, String apiKey) {
+			settings = new StaticMap(width, height, apiKey);
+		}
+
+		/**
+		 * @see StaticMap#setScale(int)
+		 */
+		public Builder scale(int scale) {
+			settings.setScale(scale);
+			return this;
+		}
+
+		public Builder maptype(Maptype maptype) {
+			settings.setMaptype(maptype);
+			return this;
+		}
+
+		/**
+		 * @see StaticMap#setFormat(Format)
+		 */
+		public Builder format(Format format) {
+			settings.setFormat(format);
+			return this;
+		}
+
+		public Builder language(Locale locale) {
+			settings.setLangauge(locale);
+			return this;
+		}
+
+		public Builder region(Locale locale) {
+			settings.setRegion(locale);
+			return this;
+		}
+
+		/**
+		 * @see StaticMap#setMaxUrlLength(int)
+		 */
+		public Builder maxUrlLength(int maxUrlLength) {
+			settings.setMaxUrlLength(maxUrlLength);
+			return this;
+		}
+
+		/**
+		 * @see StaticMap#setCanonical(boolean)
+		 */
+		public Builder canonical(boolean canonical) {
+			settings.setCanonical(canonical);
+			return this;
+		}
+
+		/**
+		 * @see StaticMap#setCoordinateDecimals(int)
+		 */
+		public Builder coordinateDecimals(int decimals) {
+			settings.setCoordinateDecimals(decimals);
+			return this;
+		}
+
+		/**
+		 * The builder may be reused afterwards without affecting the template.
+		 */
+		public StaticMapTemplate build() {
+			return new StaticMapTemplate(settings);
+		}
+	}
+}
@@ -1,9 +1,6 @@
 package de.pentabyte.googlemaps;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import org.apache.commons.lang3.StringUtils;
+import java.io.IOException;
 
 /**
  * Represents a Google Static Map Marker.
@@ -19,6 +16,22 @@ public class StaticMarker extends Location {
 		super(latitude, longitude);
 	}
 
+	/**
+	 * Copies the style of another marker, see
+	 * {@link StaticMap#geocode(Geocoder)}.
+	 */
+	StaticMarker(StaticMarker style, double latitude, double longitude) {
+		super(latitude, longitude);
+		this.color = style.color;
+		this.label = style.label;
+		this.customIconUrl = style.customIconUrl;
+		this.scale = style.scale;
+		this.anchor = style.anchor;
+		this.shadow = style.shadow;
+		this.zoom = style.zoom;
+		this.zIndex = style.zIndex;
+	}
+
 	private String color;
 	private Character label;
 	private String customIconUrl;
@@ -27,6 +40,7 @@ public class StaticMarker extends Location {
 	private boolean shadow = true;
 	private Integer zoom;
 	private Integer zIndex;
+	private transient int modCount;
 
 	/**
 	 * @param hexColor rrggbb value, e.g.: 00FF00 for green.
@@ -35,6 +49,7 @@ public class StaticMarker extends Location {
 	 */
 	public void setHexColor(String hexColor) {
 		this.color = "0x" + hexColor;
+		modCount++;
 	}
 
 	public String getColor() {
@@ -48,6 +63,7 @@ public class StaticMarker extends Location {
 	 */
 	public void setColor(Color color) {
 		this.color = color.name();
+		modCount++;
 	}
 
 	public Character getLabel() {
@@ -60,6 +76,7 @@ public class StaticMarker extends Location {
 	 */
 	public void setLabel(Character label) {
 		this.label = label;
+		modCount++;
 	}
 
 	public String getCustomIconUrl() {
@@ -68,6 +85,7 @@ public class StaticMarker extends Location {
 
 	public void setCustomIconUrl(String customIconUrl) {
 		this.customIconUrl = customIconUrl;
+		modCount++;
 	}
 
 	public Integer getScale() {
@@ -78,6 +96,7 @@ public class StaticMarker extends Location {
 		if (scale < 1 || scale > 4 || scale == 3)
 			throw new IllegalArgumentException("scale must be 1,2 or 4");
 		this.scale = scale;
+		modCount++;
 	}
 
 	public String getAnchor() {
@@ -93,6 +112,7 @@ public class StaticMarker extends Location {
 	 */
 	public void setAnchor(String anchor) {
 		this.anchor = anchor;
+		modCount++;
 	}
 
 	public Integer getZoom() {
@@ -106,6 +126,7 @@ public class StaticMarker extends Location {
 	 */
 	public void setZoom(Integer zoom) {
 		this.zoom = zoom;
+		modCount++;
 	}
 
 	public boolean isShadow() {
@@ -114,6 +135,7 @@ public class StaticMarker extends Location {
 
 	public void setShadow(boolean shadow) {
 		this.shadow = shadow;
+		modCount++;
 	}
 
 	/**
@@ -121,34 +143,55 @@ public class StaticMarker extends Location {
 	 */
 	@Override
 	public String toString() {
-		List<String> defs = new ArrayList<>();
-		List<String> styles = new ArrayList<>();
+		StringBuilder def = new StringBuilder();
+		try {
+			writeTo(def);
+		} catch (IOException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+		return def.toString();
+	}
+
+	@Override
+	int modCount() {
+		return modCount;
+	}
 
-		if (color != null)
-			styles.add("color:" + color);
+	@Override
+	protected void writeTo(Appendable out) throws IOException {
+		writeStyle(out, false);
+		super.writeTo(out);
+	}
+
+	/**
+	 * Writes everything but the location, each property followed by '|'.
+	 * Markers with the same style can share one markers parameter.
+	 * 
+	 * @param canonical omits the default color and writes hex colors in upper
+	 *                  case
+	 */
+	void writeStyle(Appendable out, boolean canonical) throws IOException {
+		if (color != null && !canonical)
+			out.append("color:").append(color).append('|');
+		else if (color != null && !color.equals(Color.red.name()))
+			out.append("color:").append(color.startsWith("0x") ? "0x" + color.substring(2).toUpperCase() : color)
+					.append('|');
 
 		if (label != null)
-			styles.add("label:" + String.valueOf(label));
+			out.append("label:").append(label).append('|');
 
 		if (anchor != null)
-			styles.add("anchor:" + anchor);
+			out.append("anchor:").append(anchor).append('|');
 
 		if (scale != 1)
-			styles.add("scale:" + scale);
+			out.append("scale:").append(String.valueOf(scale)).append('|');
 
 		if (customIconUrl != null) {
-			styles.add("icon:" + customIconUrl);
+			out.append("icon:").append(customIconUrl).append('|');
 			if (!shadow) {
-				styles.add("shadow:false");
+				out.append("shadow:false|");
 			}
 		}
-
-		if (styles.size() > 0)
-			defs.add(StringUtils.join(styles, "|"));
-
-		defs.add(super.toString());
-
-		return StringUtils.join(defs, '|');
 	}
 
 	public Integer getzIndex() {
@@ -157,6 +200,7 @@ public class StaticMarker extends Location {
 
 	public void setzIndex(Integer zIndex) {
 		this.zIndex = zIndex;
+		modCount++;
 	}
 
 }
\ No newline at end of file
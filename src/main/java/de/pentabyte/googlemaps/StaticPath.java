@@ -1,11 +1,9 @@
 package de.pentabyte.googlemaps;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.lang3.StringUtils;
-
 /**
  * Google Static Map Path.
  */
@@ -13,48 +11,132 @@ public class StaticPath implements Serializable {
 	/**
 	 * Earth radius in meters.
 	 */
-	private static int EARTH_RADIUS = 6371000;
+	static final int EARTH_RADIUS = 6371000;
 	private static final long serialVersionUID = -1938620346181841310L;
 	private String color;
 	private String fillColor;
 	private Integer weight;
 	private final List<LatLon> coords;
+	private final PackedCoordinates packedCoords;
 	private final String polyline;
+	private PathSimplifier simplifier = new DouglasPeuckerSimplifier();
+	private int priority = 1;
+	/**
+	 * incremented by all setters, see {@link #acceptState(Snapshot.Visitor)}
+	 */
+	private transient int modCount;
+	private transient volatile Geometry geometry;
+	private transient volatile Simplification simplification;
 
 	/**
 	 * @param coords
 	 *            Path will eventually be converted to an encoded polyline.
+	 *            Rendering results are cached until the list's size changes,
+	 *            so do not replace coordinates in place.
 	 */
 	public StaticPath(List<LatLon> coords) {
 		this.coords = coords;
+		this.packedCoords = null;
+		this.polyline = null;
+	}
+
+	/**
+	 * @param coords
+	 *            Path will eventually be converted to an encoded polyline.
+	 *            Preferable for long tracks: no object per coordinate.
+	 */
+	public StaticPath(PackedCoordinates coords) {
+		this.coords = null;
+		this.packedCoords = coords;
 		this.polyline = null;
 	}
 
 	/**
 	 * @param polyline
+	 *            encoded polyline. Will be decoded and simplified like any
+	 *            other path if the URL gets too long. Passed to Google
+	 *            unchanged if it cannot be decoded.
 	 */
 	public StaticPath(String polyline) {
 		this.coords = null;
+		this.packedCoords = null;
 		this.polyline = polyline;
 	}
 
+	/**
+	 * @return null, if this path is an encoded polyline. A read-only view, if
+	 *         it has been created with {@link PackedCoordinates}.
+	 */
 	public List<LatLon> getCoords() {
+		if (packedCoords != null)
+			return packedCoords.asList();
 		return coords;
 	}
 
 	/**
-	 * Lässt nur jeden zweiten Punkt über.
+	 * @return A packed copy, if this path has been created with a list of
+	 *         coordinates or the decoded polyline. Cached as long as the
+	 *         coordinates do not change.
 	 */
-	private static List<LatLon> reduce(List<LatLon> list) {
-		List<LatLon> less = new ArrayList<>();
-		for (int i = 0; i < list.size(); i++) {
-			if (i % 2 == 0)
-				less.add(list.get(i));
+	PackedCoordinates getPackedCoords() {
+		return geometry().coords;
+	}
+
+	BoundingBox getBounds() {
+		return geometry().bounds;
+	}
+
+	private Geometry geometry() {
+		int coordsVersion = coordsVersion();
+		Geometry cached = geometry;
+		if (cached == null || cached.coordsVersion != coordsVersion) {
+			// copying (or decoding) and measuring in one pass
+			BoundingBox bounds = new BoundingBox();
+			PackedCoordinates packed;
+			if (coords != null) {
+				packed = PackedCoordinates.of(coords, bounds);
+			} else if (polyline != null) {
+				packed = decode(polyline, bounds);
+			} else {
+				packed = packedCoords;
+				if (packed != null)
+					bounds = new BoundingBox(packed);
+			}
+			cached = new Geometry(coordsVersion, packed, bounds);
+			geometry = cached;
 		}
-		if (((list.size() - 1) % 2) != 0) {
-			less.add(list.get(list.size() - 1));
+		return cached;
+	}
+
+	/**
+	 * @return null, if the polyline is malformed
+	 */
+	private static PackedCoordinates decode(String polyline, BoundingBox bounds) {
+		try {
+			return PolylineDecoder.decode(polyline, bounds);
+		} catch (IllegalArgumentException e) {
+			return null;
 		}
-		return less;
+	}
+
+	/**
+	 * Changes of the coordinates can only be detected by size for lists and by
+	 * {@link PackedCoordinates#add(double, double)} for packed coordinates.
+	 */
+	private int coordsVersion() {
+		if (coords != null)
+			return coords.size();
+		if (packedCoords != null)
+			return packedCoords.modCount();
+		return 0;
+	}
+
+	/**
+	 * Visits everything the rendered path depends on.
+	 */
+	boolean acceptState(Snapshot.Visitor visitor) {
+		Object source = coords != null ? coords : packedCoords != null ? packedCoords : polyline;
+		return visitor.visit(this, modCount) && visitor.visit(source, coordsVersion());
 	}
 
 	public String getColor() {
@@ -62,6 +144,7 @@ public class StaticPath implements Serializable {
 	}
 
 	public void setColor(Color color) {
+		modCount++;
 		this.color = color.name();
 	}
 
@@ -70,10 +153,12 @@ public class StaticPath implements Serializable {
 	}
 
 	public void setFillColor(Color fillColor) {
+		modCount++;
 		this.fillColor = fillColor.name();
 	}
 
 	public void setHexFillColor(String hexFillColor) {
+		modCount++;
 		this.fillColor = "0x" + hexFillColor;
 	}
 
@@ -82,58 +167,154 @@ public class StaticPath implements Serializable {
 	}
 
 	public void setWeight(int weight) {
+		modCount++;
 		this.weight = weight;
 	}
 
 	public void setHexColor(String hexColor) {
+		modCount++;
 		this.color = "0x" + hexColor;
 	}
 
+	public PathSimplifier getSimplifier() {
+		return simplifier;
+	}
+
+	/**
+	 * Default: {@link DouglasPeuckerSimplifier}.
+	 * 
+	 * @param simplifier
+	 *            decides which coordinates will be kept if there are too many.
+	 */
+	public void setSimplifier(PathSimplifier simplifier) {
+		modCount++;
+		this.simplifier = simplifier;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Default: 1. If the URL is too short for all paths of a map, each path
+	 * gets a share of the remaining characters proportional to its priority
+	 * and its number of relevant coordinates.
+	 * 
+	 * @see StaticMap#setMaxUrlLength(int)
+	 */
+	public void setPriority(int priority) {
+		if (priority < 1)
+			throw new IllegalArgumentException("priority must be positive");
+		this.priority = priority;
+		modCount++;
+	}
+
 	/**
 	 * The coordinates will be compressed in such a way that coordinates which
-	 * are too close together will be ignored. After this step, as many coords
-	 * will be omitted until is short enough to comply with Google Map URL
+	 * are too close together will be ignored. After this step, the
+	 * {@link #getSimplifier() simplifier} keeps the maxPoints most important
+	 * coordinates, so the path is short enough to comply with Google Map URL
 	 * length.
 	 */
 	protected String formatFor(double minDistanceMeters, int maxPoints) {
-		List<String> defs = new ArrayList<>();
-
-		if (color != null)
-			defs.add("color:" + color);
+		StringBuilder def = new StringBuilder();
+		try {
+			formatTo(def, minDistanceMeters, maxPoints);
+		} catch (IOException e) {
+			throw new RuntimeException("kann nicht sein", e);
+		}
+		return def.toString();
+	}
 
-		if (fillColor != null)
-			defs.add("fillcolor:" + fillColor);
+	/**
+	 * Like {@link #formatFor(double, int)}, but writes into the given target.
+	 */
+	protected void formatTo(Appendable out, double minDistanceMeters, int maxPoints) throws IOException {
+		SimplifiedPath simplified = simplify(minDistanceMeters);
+		formatTo(out, simplified, simplified != null ? simplified.limit(maxPoints) : 0, new RenderScratch());
+	}
 
-		if (weight != null)
-			defs.add("weight:" + weight);
+	/**
+	 * @param simplified see {@link #simplify(double)}
+	 * @param points     number of coordinates to be encoded. 0: none, the
+	 *                   polyline memo of simplified is left alone
+	 */
+	void formatTo(Appendable out, SimplifiedPath simplified, int points, RenderScratch scratch) throws IOException {
+		boolean styled = writeStyleTo(out);
+
+		if (simplified != null) {
+			if (styled)
+				out.append('|');
+			out.append("enc:");
+			if (points > 0)
+				simplified.encodeTo(out, points, scratch);
+		} else if (polyline != null) {
+			// malformed, see decode(String, BoundingBox)
+			if (styled)
+				out.append('|');
+			out.append("enc:").append(polyline);
+		}
+	}
 
-		if (coords != null) {
-			List<LatLon> reduced = new ArrayList<>();
-			LatLon lastCoord = null;
-			for (LatLon coord : coords) {
-				if (lastCoord == null || distanceApproximate(lastCoord, coord) > minDistanceMeters) {
-					reduced.add(coord);
-					lastCoord = coord;
-				}
-			}
+	/**
+	 * @return false, if there are no style definitions
+	 */
+	private boolean writeStyleTo(Appendable out) throws IOException {
+		boolean styled = false;
 
-			while (reduced.size() > maxPoints) {
-				reduced = reduce(reduced);
-			}
+		if (color != null) {
+			out.append("color:").append(color);
+			styled = true;
+		}
 
-			PolylineEncoder encoder = new PolylineEncoder();
+		if (fillColor != null) {
+			if (styled)
+				out.append('|');
+			out.append("fillcolor:").append(fillColor);
+			styled = true;
+		}
 
-			for (LatLon coord : reduced) {
-				encoder.add(coord.getLatitude(), coord.getLongitude());
-			}
-			defs.add("enc:" + encoder.toString());
+		if (weight != null) {
+			if (styled)
+				out.append('|');
+			out.append("weight:").append(String.valueOf(weight));
+			styled = true;
 		}
 
-		if (polyline != null) {
-			defs.add("enc:" + polyline);
+		return styled;
+	}
+
+	/**
+	 * Drops coordinates which are too close to their predecessor and ranks the
+	 * remaining ones with the {@link #getSimplifier() simplifier}. Cached as
+	 * long as neither the coordinates nor the parameters change.
+	 * 
+	 * @return null, if there are no coordinates.
+	 */
+	SimplifiedPath simplify(double minDistanceMeters) {
+		int coordsVersion = coordsVersion();
+		Simplification cached = simplification;
+		if (cached == null || cached.coordsVersion != coordsVersion || cached.minDistanceMeters != minDistanceMeters
+				|| cached.simplifier != simplifier) {
+			cached = new Simplification(coordsVersion, minDistanceMeters, simplifier,
+					simplify(getPackedCoords(), minDistanceMeters));
+			simplification = cached;
 		}
+		return cached.result;
+	}
+
+	private SimplifiedPath simplify(PackedCoordinates packed, double minDistanceMeters) {
+		if (packed == null)
+			return null;
+
+		int size = packed.size();
+		double[] latitudes = new double[size];
+		double[] longitudes = new double[size];
+		int count = DistanceKernels.filterByDistance(packed.latitudes(), packed.longitudes(), size,
+				minDistanceMeters, latitudes, longitudes);
 
-		return StringUtils.join(defs, '|');
+		return new SimplifiedPath(latitudes, longitudes, count,
+				simplifier.rank(latitudes, longitudes, count, minDistanceMeters));
 	}
 
 	protected static double distanceAuto(LatLon c1, LatLon c2) {
@@ -191,19 +372,35 @@ public class StaticPath implements Serializable {
 	 *         distances of up to 4 degrees.
 	 */
 	protected static double distanceApproximate(double lat1, double lon1, double lat2, double lon2) {
-		if (lon1 < 0)
-			lon1 += 360;
-		if (lon2 < 0)
-			lon2 += 360;
+		double x = DistanceKernels.deltaLongitude(lon1, lon2) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+		double y = lat2 - lat1;
+		return Math.sqrt(x * x + y * y) * DistanceKernels.METERS_PER_DEGREE;
+	}
 
-		lat1 = Math.toRadians(lat1);
-		lon1 = Math.toRadians(lon1);
-		lat2 = Math.toRadians(lat2);
-		lon2 = Math.toRadians(lon2);
+	private static final class Geometry {
+		private final int coordsVersion;
+		private final PackedCoordinates coords;
+		private final BoundingBox bounds;
 
-		double x = (lon2 - lon1) * Math.cos((lat1 + lat2) / 2);
-		double y = (lat2 - lat1);
-		return Math.sqrt(x * x + y * y) * EARTH_RADIUS;
+		Geometry(int coordsVersion, PackedCoordinates coords, BoundingBox bounds) {
+			this.coordsVersion = coordsVersion;
+			this.coords = coords;
+			this.bounds = coords != null ? bounds : null;
+		}
 	}
 
-}
\ No newline at end of file
+	private static final class Simplification {
+		private final int coordsVersion;
+		private final double minDistanceMeters;
+		private final PathSimplifier simplifier;
+		private final SimplifiedPath result;
+
+		Simplification(int coordsVersion, double minDistanceMeters, PathSimplifier simplifier,
+				SimplifiedPath result) {
+			this.coordsVersion = coordsVersion;
+			this.minDistanceMeters = minDistanceMeters;
+			this.simplifier = simplifier;
+			this.result = result;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package de.pentabyte.googlemaps;
+
+/**
+ * Simplifies a path while its coordinates are still arriving, e.g. from a
+ * {@link TrackReader}. Memory is bounded by maxPoints, not by the length of
+ * the input, so tracks with millions of points never have to be loaded
+ * completely.
+ *
+ * <pre>
+ * StreamingSimplifier simplifier = new StreamingSimplifier(5, 10000);
+ * TrackReader.readGpx(in, simplifier);
+ * StaticPath path = new StaticPath(simplifier.finish());
+ * </pre>
+ *
+ * Sliding window algorithm: a point is dropped as long as the segment from
+ * the last kept point to the newest one passes all dropped points within the
+ * tolerance. The window is limited to {@link #WINDOW} points. Whenever more
+ * than maxPoints have been kept, the tolerance is doubled and the kept points
+ * are simplified again.
+ *
+ * Not thread safe.
+ */
+public final class StreamingSimplifier {
+	/**
+	 * maximum number of points dropped in a row
+	 */
+	static final int WINDOW = 128;
+	private final int maxPoints;
+	private double toleranceMeters;
+	private double toleranceSquared;
+	private PackedCoordinates kept = new PackedCoordinates();
+	/**
+	 * index 0: the last kept point (anchor), followed by the points which may
+	 * still be dropped
+	 */
+	private final double[] latitudes = new double[WINDOW + 2];
+	private final double[] longitudes = new double[WINDOW + 2];
+	/**
+	 * window projected onto a plane around the anchor, see
+	 * {@link EquirectangularProjection#segmentDistanceSquared(double[], int, int, int)}
+	 */
+	private final double[] xy = new double[2 * (WINDOW + 2)];
+	private double metersPerDegreeX;
+	private int size;
+	private long added;
+
+	/**
+	 * @param toleranceMeters initial tolerance: the simplified path deviates
+	 *                        from the original by at most this distance (twice
+	 *                        the final tolerance, once it has been doubled)
+	 * @param maxPoints       0: no limit. Otherwise at least 2.
+	 */
+	public StreamingSimplifier(double toleranceMeters, int maxPoints) {
+		if (toleranceMeters < 0)
+			throw new IllegalArgumentException("tolerance must not be negative");
+		if (maxPoints < 0 || maxPoints == 1)
+			throw new IllegalArgumentException("maxPoints must be 0 or at least 2");
+		this.maxPoints = maxPoints;
+		setTolerance(toleranceMeters);
+	}
+
+	private void setTolerance(double toleranceMeters) {
+		this.toleranceMeters = toleranceMeters;
+		this.toleranceSquared = toleranceMeters * toleranceMeters;
+	}
+
+	/**
+	 * Adds the next point of the path.
+	 */
+	public void add(double latitude, double longitude) {
+		added++;
+		if (size == 0) {
+			anchor(latitude, longitude);
+			return;
+		}
+
+		put(size, latitude, longitude);
+		for (int i = 1; i < size; i++) {
+			if (EquirectangularProjection.segmentDistanceSquared(xy, i, 0, size) > toleranceSquared) {
+				keepLast();
+				return;
+			}
+		}
+		if (size == WINDOW + 1)
+			keepLast();
+		else
+			size++;
+	}
+
+	/**
+	 * Keeps the point before the newest one and restarts the window there.
+	 */
+	private void keepLast() {
+		double latitude = latitudes[size];
+		double longitude = longitudes[size];
+		anchor(latitudes[size - 1], longitudes[size - 1]);
+		put(1, latitude, longitude);
+		size = 2;
+	}
+
+	private void anchor(double latitude, double longitude) {
+		latitudes[0] = latitude;
+		longitudes[0] = longitude;
+		metersPerDegreeX = Math.cos(Math.toRadians(latitude)) * DistanceKernels.METERS_PER_DEGREE;
+		size = 1;
+		keep(latitude, longitude);
+	}
+
+	private void keep(double latitude, double longitude) {
+		kept.add(latitude, longitude);
+		if (maxPoints > 0 && kept.size() > maxPoints)
+			coarsen();
+	}
+
+	/**
+	 * Doubles the tolerance until at most half of maxPoints remain. The first
+	 * and the last kept point (the anchor) always survive.
+	 */
+	private void coarsen() {
+		do {
+			StreamingSimplifier coarser = new StreamingSimplifier(Math.max(2 * toleranceMeters, 1), 0);
+			double[] keptLatitudes = kept.latitudes();
+			double[] keptLongitudes = kept.longitudes();
+			for (int i = 0; i < kept.size(); i++)
+				coarser.add(keptLatitudes[i], keptLongitudes[i]);
+			kept = coarser.finish();
+			setTolerance(coarser.toleranceMeters);
+		} while (kept.size() > Math.max(2, maxPoints / 2));
+	}
+
+	private void put(int index, double latitude, double longitude) {
+		latitudes[index] = latitude;
+		longitudes[index] = longitude;
+		xy[2 * index] = DistanceKernels.deltaLongitude(longitudes[0], longitude) * metersPerDegreeX;
+		xy[2 * index + 1] = (latitude - latitudes[0]) * DistanceKernels.METERS_PER_DEGREE;
+	}
+
+	/**
+	 * @return the tolerance actually applied: larger than the initial one if
+	 *         maxPoints has been exceeded.
+	 */
+	public double getToleranceMeters() {
+		return toleranceMeters;
+	}
+
+	/**
+	 * @return number of points added so far
+	 */
+	public long getAdded() {
+		return added;
+	}
+
+	/**
+	 * Keeps the last point of the path. The simplifier must not be used
+	 * afterwards.
+	 *
+	 * @return the simplified path, including its first and last point.
+	 */
+	public PackedCoordinates finish() {
+		if (size > 1) {
+			keep(latitudes[size - 1], longitudes[size - 1]);
+			size = 1;
+		}
+		return kept;
+	}
+}
@@ -0,0 +1,48 @@
+package de.pentabyte.googlemaps;
+
+/**
+ * Rate limiter: refills continuously up to its capacity. Not thread safe.
+ */
+final class TokenBucket {
+	private final double capacity;
+	private final double tokensPerNano;
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * @param tokensPerSecond refill rate
+	 * @param capacity        maximum burst, the bucket starts full
+	 * @param now             {@link System#nanoTime()}
+	 */
+	TokenBucket(double tokensPerSecond, double capacity, long now) {
+		if (!(tokensPerSecond > 0))
+			throw new IllegalArgumentException("tokensPerSecond must be positive");
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be at least 1");
+		this.capacity = capacity;
+		this.tokensPerNano = tokensPerSecond / 1e9;
+		this.tokens = capacity;
+		this.lastRefill = now;
+	}
+
+	private void refill(long now) {
+		tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+		lastRefill = now;
+	}
+
+	/**
+	 * @return 0, if a token can be taken right now
+	 */
+	long nanosUntilAvailable(long now) {
+		refill(now);
+		return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+	}
+
+	/**
+	 * Takes a token, only allowed if {@link #nanosUntilAvailable(long)} returned
+	 * 0.
+	 */
+	void take() {
+		tokens -= 1;
+	}
+}
@@ -0,0 +1,251 @@
+package de.pentabyte.googlemaps;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads recorded tracks point by point into a {@link StreamingSimplifier}, so
+ * memory does not depend on the length of the track. The streams will not be
+ * closed.
+ */
+public final class TrackReader {
+	private TrackReader() {
+	}
+
+	/**
+	 * Reads all track points (trkpt) of all tracks and segments, in document
+	 * order.
+	 */
+	public static void readGpx(InputStream in, StreamingSimplifier target) throws IOException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		try {
+			XMLStreamReader xml = factory.createXMLStreamReader(in);
+			try {
+				while (xml.hasNext()) {
+					if (xml.next() == XMLStreamConstants.START_ELEMENT && "trkpt".equals(xml.getLocalName())) {
+						target.add(parse(xml.getAttributeValue(null, "lat"), "lat", xml.getLocation().getLineNumber()),
+								parse(xml.getAttributeValue(null, "lon"), "lon", xml.getLocation().getLineNumber()));
+					}
+				}
+			} finally {
+				xml.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("invalid GPX: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads latitude and longitude from the first two columns, separated by
+	 * comma. See {@link #readCsv(Reader, int, int, char, StreamingSimplifier)}.
+	 */
+	public static void readCsv(Reader in, StreamingSimplifier target) throws IOException {
+		readCsv(in, 0, 1, ',', target);
+	}
+
+	/**
+	 * Empty lines and lines starting with '#' will be skipped, as well as a
+	 * header line (a first line whose columns are not numbers).
+	 *
+	 * @param latitudeColumn  0 based
+	 * @param longitudeColumn 0 based
+	 */
+	public static void readCsv(Reader in, int latitudeColumn, int longitudeColumn, char separator,
+			StreamingSimplifier target) throws IOException {
+		BufferedReader lines = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+		int lineNumber = 0;
+		boolean first = true;
+		String line;
+		while ((line = lines.readLine()) != null) {
+			lineNumber++;
+			if (line.trim().isEmpty() || line.startsWith("#"))
+				continue;
+
+			String latitude = column(line, latitudeColumn, separator);
+			String longitude = column(line, longitudeColumn, separator);
+			if (first && !isNumber(latitude)) {
+				first = false;
+				continue;
+			}
+			first = false;
+			target.add(parse(latitude, "latitude", lineNumber), parse(longitude, "longitude", lineNumber));
+		}
+	}
+
+	/**
+	 * @return null, if the line has less columns
+	 */
+	private static String column(String line, int column, char separator) {
+		int start = 0;
+		for (int i = 0; i < column; i++) {
+			start = line.indexOf(separator, start) + 1;
+			if (start == 0)
+				return null;
+		}
+		int end = line.indexOf(separator, start);
+		return line.substring(start, end < 0 ? line.length() : end).trim();
+	}
+
+	private static boolean isNumber(String value) {
+		try {
+			Double.parseDouble(value);
+			return true;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+	private static double parse(String value, String name, int lineNumber) throws IOException {
+		if (value == null)
+			throw new IOException(name + " missing in line " + lineNumber);
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IOException("invalid " + name + " in line " + lineNumber + ": " + value, e);
+		}
+	}
+
+	/**
+	 * Reads the positions of all LineStrings and MultiLineStrings (any
+	 * coordinates nested at least two levels deep), in document order. Points
+	 * are skipped. Works on any GeoJSON object (geometry, Feature,
+	 * FeatureCollection) without building it in memory.
+	 */
+	public static void readGeoJson(Reader in, StreamingSimplifier target) throws IOException {
+		new GeoJsonScanner(in instanceof BufferedReader ? in : new BufferedReader(in), target).scan();
+	}
+
+	/**
+	 * Just enough of a JSON tokenizer to find "coordinates" members. Strings
+	 * are compared, not collected, so their length does not matter.
+	 */
+	private static final class GeoJsonScanner {
+		private static final String COORDINATES = "coordinates";
+		private final Reader in;
+		private final StreamingSimplifier target;
+		private final StringBuilder number = new StringBuilder();
+		private int pushedBack = -1;
+
+		GeoJsonScanner(Reader in, StreamingSimplifier target) {
+			this.in = in;
+			this.target = target;
+		}
+
+		void scan() throws IOException {
+			int c;
+			while ((c = read()) != -1) {
+				if (c == '"') {
+					boolean coordinates = readString();
+					c = readNonWhitespace();
+					if (coordinates && c == ':')
+						readCoordinates(readNonWhitespace(), 0);
+					else
+						pushedBack = c;
+				}
+			}
+		}
+
+		/**
+		 * @return true, if the string is "coordinates"
+		 */
+		private boolean readString() throws IOException {
+			int length = 0;
+			boolean matches = true;
+			int c;
+			while ((c = read()) != '"') {
+				if (c == -1)
+					throw new IOException("invalid GeoJSON: unterminated string");
+				if (c == '\\') {
+					read();
+					matches = false;
+				}
+				matches &= length < COORDINATES.length() && COORDINATES.charAt(length) == c;
+				length++;
+			}
+			return matches && length == COORDINATES.length();
+		}
+
+		/**
+		 * @param c     first character of the value
+		 * @param depth 0: the value of "coordinates"
+		 */
+		private void readCoordinates(int c, int depth) throws IOException {
+			if (c != '[') {
+				// e.g. null
+				pushedBack = c;
+				return;
+			}
+			c = readNonWhitespace();
+			if (c == ']')
+				return;
+			if (c == '[') {
+				while (true) {
+					readCoordinates(c, depth + 1);
+					c = readNonWhitespace();
+					if (c == ']')
+						return;
+					if (c != ',')
+						throw new IOException("invalid GeoJSON: ',' or ']' expected instead of " + describe(c));
+					c = readNonWhitespace();
+				}
+			}
+
+			// a position: longitude, latitude and maybe more
+			double longitude = readNumber(c);
+			c = readNonWhitespace();
+			if (c != ',')
+				throw new IOException("invalid GeoJSON: latitude missing");
+			double latitude = readNumber(readNonWhitespace());
+			while ((c = read()) != ']') {
+				if (c == -1)
+					throw new IOException("invalid GeoJSON: unterminated position");
+			}
+			if (depth > 0)
+				target.add(latitude, longitude);
+		}
+
+		private double readNumber(int c) throws IOException {
+			number.setLength(0);
+			while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+				number.append((char) c);
+				c = read();
+			}
+			pushedBack = c;
+			try {
+				return Double.parseDouble(number.toString());
+			} catch (NumberFormatException e) {
+				throw new IOException("invalid GeoJSON: number expected instead of " + describe(c), e);
+			}
+		}
+
+		private static String describe(int c) {
+			return c == -1 ? "end of input" : "'" + (char) c + "'";
+		}
+
+		private int readNonWhitespace() throws IOException {
+			int c;
+			do {
+				c = read();
+			} while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+			return c;
+		}
+
+		private int read() throws IOException {
+			if (pushedBack != -1) {
+				int c = pushedBack;
+				pushedBack = -1;
+				return c;
+			}
+			return in.read();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package de.pentabyte.googlemaps;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Distributes the characters left in a URL among the paths of a map. Each path
+ * is entitled to a share proportional to its weight. Paths which need less
+ * than their share pass the rest on to the others (water filling), so the
+ * budget is used up by the paths which benefit from it.
+ */
+final class UrlBudget {
+	private UrlBudget() {
+	}
+
+	/**
+	 * @param paths     simplified paths to be encoded
+	 * @param weights   relative share of each path
+	 * @param available characters available for all encoded polylines
+	 * @return number of points to encode for each path
+	 */
+	static int[] solve(SimplifiedPath[] paths, double[] weights, int available, RenderScratch scratch) {
+		int n = paths.length;
+		int[] points = new int[n];
+		int[] demands = new int[n];
+		// every path keeps at least its end points
+		int[] minimums = new int[n];
+		double totalWeight = 0;
+		int budget = available;
+		for (int i = 0; i < n; i++) {
+			demands[i] = paths[i].encodedLength(paths[i].size(), scratch);
+			minimums[i] = paths[i].encodedLength(Math.min(2, paths[i].size()), scratch);
+			budget -= minimums[i];
+			totalWeight += weights[i];
+		}
+
+		// the most modest paths first: whatever they leave is shared by the
+		// rest
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, Comparator.comparingDouble(i -> demands[i] / Math.max(weights[i], Double.MIN_VALUE)));
+
+		for (int i : order) {
+			budget += minimums[i];
+			int share = totalWeight > 0 ? (int) (budget * (weights[i] / totalWeight)) : budget;
+			if (demands[i] <= share) {
+				points[i] = paths[i].size();
+				budget -= demands[i];
+			} else {
+				points[i] = paths[i].fit(share, scratch);
+				budget -= paths[i].encodedLength(points[i], scratch);
+			}
+			totalWeight -= weights[i];
+		}
+		return points;
+	}
+}
@@ -0,0 +1,74 @@
+package de.pentabyte.googlemaps;
+
+/**
+ * What a {@link StaticMap} will show, as far as it can be computed without
+ * geocoding: explicit center and zoom, otherwise the center and highest zoom
+ * fitting all coordinates of markers, visibles and paths (Google adds a little
+ * padding, so its zoom may be one level lower).
+ * 
+ * @see StaticMap#getViewport()
+ */
+public final class Viewport {
+	private final double centerLatitude;
+	private final double centerLongitude;
+	private final int zoom;
+	private final int scale;
+
+	Viewport(double centerLatitude, double centerLongitude, int zoom, int scale) {
+		this.centerLatitude = centerLatitude;
+		this.centerLongitude = centerLongitude;
+		this.zoom = zoom;
+		this.scale = scale;
+	}
+
+	/**
+	 * @param center explicit center, null: center of box
+	 * @param zoom   explicit zoom, null: fit box into width x height
+	 */
+	static Viewport of(BoundingBox box, Location center, Integer zoom, int width, int height, int scale) {
+		double latitude, longitude;
+		if (center != null && !Double.isNaN(center.latitude())) {
+			latitude = center.latitude();
+			longitude = center.longitude();
+		} else {
+			double y = (WebMercator.y(box.getLatMin(), 0) + WebMercator.y(box.getLatMax(), 0)) / 2;
+			latitude = WebMercator.latitude(y, 0);
+			longitude = box.getCenterLongitude();
+		}
+		return new Viewport(latitude, longitude, zoom != null ? zoom : WebMercator.fitZoom(box, width, height),
+				scale);
+	}
+
+	public double getCenterLatitude() {
+		return centerLatitude;
+	}
+
+	public double getCenterLongitude() {
+		return centerLongitude;
+	}
+
+	public int getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * @return meters per point at the center (Google's size parameter counts
+	 *         points)
+	 */
+	public double getMetersPerPoint() {
+		return WebMercator.metersPerPoint(centerLatitude, zoom);
+	}
+
+	/**
+	 * @return meters per image pixel at the center, taking the scale into
+	 *         account
+	 */
+	public double getMetersPerPixel() {
+		return getMetersPerPoint() / scale;
+	}
+
+	@Override
+	public String toString() {
+		return centerLatitude + "," + centerLongitude + " zoom " + zoom;
+	}
+}
@@ -0,0 +1,64 @@
+package de.pentabyte.googlemaps;
+
+import java.io.Serializable;
+
+/**
+ * Visvalingam-Whyatt: Repeatedly removes the point which forms the smallest
+ * triangle with its neighbours (its "effective area"). The ranking is the
+ * reverse removal order. O(n log n).
+ *
+ * Compared to {@link DouglasPeuckerSimplifier} the result looks smoother
+ * since small wiggles are removed before long straight deviations. Points
+ * with an effective area below toleranceMeters² will not be ranked.
+ */
+public class VisvalingamWhyattSimplifier implements PathSimplifier, Serializable {
+	private static final long serialVersionUID = -3101546618546284765L;
+
+	@Override
+	public int[] rank(double[] latitudes, double[] longitudes, int count, double toleranceMeters) {
+		if (count <= 2)
+			return count == 2 ? new int[] { 0, 1 } : new int[count];
+
+		double[] xy = EquirectangularProjection.project(latitudes, longitudes, count);
+		int[] previous = new int[count];
+		int[] next = new int[count];
+		DoubleHeap areas = new DoubleHeap(count);
+		for (int i = 1; i < count - 1; i++) {
+			previous[i] = i - 1;
+			next[i] = i + 1;
+			areas.put(i, EquirectangularProjection.triangleArea(xy, i - 1, i, i + 1));
+		}
+
+		// removal order and the effective area at removal time
+		int[] removed = new int[count - 2];
+		double[] effectiveAreas = new double[count - 2];
+		double maxArea = 0;
+		for (int r = 0; r < removed.length; r++) {
+			int i = areas.poll();
+			// a point must not be less important than one removed before it
+			maxArea = Math.max(maxArea, areas.key(i));
+			removed[r] = i;
+			effectiveAreas[r] = maxArea;
+
+			int p = previous[i], n = next[i];
+			next[p] = n;
+			previous[n] = p;
+			if (p > 0)
+				areas.put(p, EquirectangularProjection.triangleArea(xy, previous[p], p, n));
+			if (n < count - 1)
+				areas.put(n, EquirectangularProjection.triangleArea(xy, p, n, next[n]));
+		}
+
+		double minArea = toleranceMeters * toleranceMeters;
+		int relevant = removed.length;
+		while (relevant > 0 && effectiveAreas[removed.length - relevant] < minArea)
+			relevant--;
+
+		int[] ranking = new int[2 + relevant];
+		ranking[0] = 0;
+		ranking[1] = count - 1;
+		for (int r = 0; r < relevant; r++)
+			ranking[2 + r] = removed[removed.length - 1 - r];
+		return ranking;
+	}
+}
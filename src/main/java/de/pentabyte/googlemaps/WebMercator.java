@@ -0,0 +1,62 @@
+package de.pentabyte.googlemaps;
+
+/**
+ * Google's map projection: the world is a square of 256 * 2^zoom points,
+ * (0,0) being the north-western corner.
+ */
+final class WebMercator {
+	static final int TILE_SIZE = 256;
+	static final int MAX_ZOOM = 21;
+	/**
+	 * latitudes beyond are clamped, like Google does
+	 */
+	private static final double MAX_LATITUDE = 85.05112878;
+
+	private WebMercator() {
+	}
+
+	/**
+	 * @return width of the world in points
+	 */
+	static double worldSize(int zoom) {
+		return Math.scalb((double) TILE_SIZE, zoom);
+	}
+
+	static double x(double longitude, int zoom) {
+		return (longitude + 180) / 360 * worldSize(zoom);
+	}
+
+	static double y(double latitude, int zoom) {
+		double lat = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+		double sin = Math.sin(Math.toRadians(lat));
+		return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * worldSize(zoom);
+	}
+
+	/**
+	 * Inverse of {@link #y(double, int)}.
+	 */
+	static double latitude(double y, int zoom) {
+		double n = Math.PI * (1 - 2 * y / worldSize(zoom));
+		return Math.toDegrees(Math.atan(Math.sinh(n)));
+	}
+
+	/**
+	 * @return ground distance of one point at the given latitude
+	 */
+	static double metersPerPoint(double latitude, int zoom) {
+		return 2 * Math.PI * StaticPath.EARTH_RADIUS * Math.cos(Math.toRadians(latitude)) / worldSize(zoom);
+	}
+
+	/**
+	 * @return highest zoom at which box fits into width x height points
+	 */
+	static int fitZoom(BoundingBox box, int width, int height) {
+		for (int zoom = MAX_ZOOM; zoom > 0; zoom--) {
+			double w = box.getLonSpan() / 360 * worldSize(zoom);
+			double h = y(box.getLatMin(), zoom) - y(box.getLatMax(), zoom);
+			if (w <= width && h <= height)
+				return zoom;
+		}
+		return 0;
+	}
+}
@@ -1,18 +1,11 @@
 package de.pentabyte.googlemaps;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.junit.ClassRule;
 import org.junit.Test;
 
@@ -27,12 +20,13 @@ import de.pentabyte.googlemaps.StaticMap.Maptype;
 public class ExampleCreator {
 	private static String GOOGLEAPI_PROPERTYNAME = "GOOGLEAPI";
 	private String googleApiKey = System.getProperty(GOOGLEAPI_PROPERTYNAME);
+	private StaticMapFetcher fetcher = new StaticMapFetcher();
 
 	@ClassRule
 	public static SystemPropertyPreCondition check = new SystemPropertyPreCondition(GOOGLEAPI_PROPERTYNAME);
 
 	@Test
-	public void createLocation() throws ClientProtocolException, IOException {
+	public void createLocation() throws IOException {
 		StaticMap map = new StaticMap(400, 200, googleApiKey);
 		map.setCenter(new Location("Eiffeltower"), 16);
 		map.setMaptype(Maptype.hybrid);
@@ -41,7 +35,7 @@ public class ExampleCreator {
 	}
 
 	@Test
-	public void createMarkers() throws ClientProtocolException, IOException {
+	public void createMarkers() throws IOException {
 		StaticMap map = new StaticMap(400, 200, googleApiKey);
 		map.setMaptype(Maptype.hybrid);
 
@@ -56,7 +50,7 @@ public class ExampleCreator {
 	}
 
 	@Test
-	public void createCustomMarker() throws ClientProtocolException, IOException {
+	public void createCustomMarker() throws IOException {
 		StaticMap map = new StaticMap(400, 200, googleApiKey);
 		map.setMaptype(Maptype.hybrid);
 
@@ -74,7 +68,7 @@ public class ExampleCreator {
 	}
 
 	@Test
-	public void createEncodedPolyline() throws ClientProtocolException, IOException {
+	public void createEncodedPolyline() throws IOException {
 		List<LatLon> coords = new ArrayList<>();
 		coords.add(new LatLonImpl(40.800568, -73.958185));
 		coords.add(new LatLonImpl(40.796855, -73.949294));
@@ -92,7 +86,7 @@ public class ExampleCreator {
 	}
 	
 	@Test
-	public void createVisibles() throws ClientProtocolException, IOException {
+	public void createVisibles() throws IOException {
 		StaticMap map = new StaticMap(400, 200, googleApiKey);
 		map.setMaptype(Maptype.hybrid);
 
@@ -104,7 +98,7 @@ public class ExampleCreator {
 		create(map, "visibles.png");
 	}
 
-	private void create(StaticMap map, String filename) throws ClientProtocolException, IOException {
+	private void create(StaticMap map, String filename) throws IOException {
 		File myFile = new File("src/test/resources/" + filename);
 		String url = map.toString();
 
@@ -113,17 +107,7 @@ public class ExampleCreator {
 		writer.write(url.replace(googleApiKey, "*****"));
 		writer.close();
 
-		CloseableHttpClient client = HttpClients.createDefault();
-		try (CloseableHttpResponse response = client.execute(new HttpGet(url))) {
-			HttpEntity entity = response.getEntity();
-			if (response.getStatusLine().getStatusCode() != 200)
-				throw new RuntimeException(response.getStatusLine().toString() + " for URL [" + url + "]");
-			if (entity != null) {
-				try (FileOutputStream outstream = new FileOutputStream(myFile)) {
-					entity.writeTo(outstream);
-				}
-			}
-		}
+		fetcher.fetch(map, myFile.toPath());
 	}
 
 }
\ No newline at end of file
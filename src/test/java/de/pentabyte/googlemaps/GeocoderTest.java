@@ -0,0 +1,103 @@
+package de.pentabyte.googlemaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.pentabyte.googlemaps.StaticMap.Maptype;
+
+public class GeocoderTest {
+	private final AtomicInteger requests = new AtomicInteger();
+	private final Map<String, LatLon> places = new HashMap<>();
+	/**
+	 * in-memory stub instead of a geocoding service
+	 */
+	private final Geocoder stub = query -> {
+		requests.incrementAndGet();
+		return places.get(query.trim());
+	};
+
+	public GeocoderTest() {
+		places.put("Eiffeltower", new LatLonImpl(48.858370, 2.294481));
+		places.put("Louvre", new LatLonImpl(48.860611, 2.337644));
+	}
+
+	@Test
+	public void test_cache() throws IOException {
+		CachingGeocoder geocoder = new CachingGeocoder(stub, 2);
+		assertEquals(48.858370, geocoder.geocode("Eiffeltower").getLatitude(), 0);
+		assertEquals(48.858370, geocoder.geocode(" eiffeltower ").getLatitude(), 0);
+		assertNull(geocoder.geocode("Atlantis"));
+		assertNull(geocoder.geocode("Atlantis"));
+		assertEquals(2, requests.get());
+		assertEquals(2, geocoder.getHits());
+
+		// evicts the oldest entry
+		geocoder.geocode("Louvre");
+		assertEquals(2, geocoder.size());
+		geocoder.geocode("Eiffeltower");
+		assertEquals(4, requests.get());
+	}
+
+	@Test
+	public void test_cache_added_again() throws IOException {
+		CachingGeocoder geocoder = new CachingGeocoder(stub, 2);
+		geocoder.geocode("Eiffeltower");
+		geocoder.geocode("Louvre");
+		geocoder.geocode("Atlantis");
+		// evicted before, now the newest entry
+		geocoder.geocode("Eiffeltower");
+		assertEquals(4, requests.get());
+
+		geocoder.geocode("Atlantis");
+		geocoder.geocode("Eiffeltower");
+		assertEquals(4, requests.get());
+		assertEquals(2, geocoder.size());
+
+		// evicts Atlantis, not the fresh Eiffeltower entry
+		geocoder.geocode("Louvre");
+		geocoder.geocode("Eiffeltower");
+		assertEquals(5, requests.get());
+	}
+
+	@Test
+	public void test_persistence() throws IOException {
+		CachingGeocoder geocoder = new CachingGeocoder(stub, 100);
+		geocoder.geocode("Eiffeltower");
+		geocoder.geocode("Atlantis");
+		Path file = Files.createTempFile("geocoder", ".tsv");
+		try {
+			geocoder.save(file);
+			CachingGeocoder loaded = new CachingGeocoder(stub, 100);
+			loaded.load(file);
+			assertEquals(2.294481, loaded.geocode("Eiffeltower").getLongitude(), 0);
+			assertEquals(1, loaded.getHits());
+			assertEquals(1, loaded.size());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void test_geocode_map() throws IOException {
+		StaticMap map = new StaticMap(400, 200, "key");
+		map.setMaptype(Maptype.hybrid);
+		map.setCenter(new Location("Eiffeltower"));
+		StaticMarker marker = new StaticMarker("Louvre");
+		marker.setLabel('L');
+		map.addMarker(marker);
+		map.addVisible(new Location("Atlantis"));
+
+		assertEquals(1, map.geocode(new CachingGeocoder(stub, 100)));
+		assertEquals("https://maps.googleapis.com/maps/api/staticmap?size=400x200&center=48.85837,2.294481" //
+				+ "&maptype=hybrid&markers=label:L|48.860611,2.337644&visible=Atlantis&key=key", map.toString());
+	}
+}
@@ -0,0 +1,32 @@
+package de.pentabyte.googlemaps;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MarkerClusteringTest {
+	@Test
+	public void test_same_marker_twice() {
+		StaticMarker marker = new StaticMarker(50, 7);
+		StaticMarker other = new StaticMarker(50.0001, 7.0001);
+		List<StaticMarker> clustered = new MarkerClustering().cluster(Arrays.asList(marker, other, marker), 10, 32);
+		assertEquals(1, clustered.size());
+	}
+
+	@Test
+	public void test_antimeridian_centroid() {
+		// zoom 0, one cell for the whole world
+		List<StaticMarker> clustered = new MarkerClustering()
+				.cluster(Arrays.asList(new StaticMarker(10, 170), new StaticMarker(20, -170)), 0, 256);
+		assertEquals(1, clustered.size());
+		assertEquals(15, clustered.get(0).latitude(), 1e-9);
+		assertEquals(180, Math.abs(clustered.get(0).longitude()), 1e-9);
+
+		clustered = new MarkerClustering()
+				.cluster(Arrays.asList(new StaticMarker(10, -175), new StaticMarker(20, 170)), 0, 256);
+		assertEquals(177.5, clustered.get(0).longitude(), 1e-9);
+	}
+}
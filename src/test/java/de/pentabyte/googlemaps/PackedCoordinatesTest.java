@@ -0,0 +1,94 @@
+package de.pentabyte.googlemaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class PackedCoordinatesTest {
+	@Test
+	public void test_growth() {
+		PackedCoordinates coords = new PackedCoordinates(1);
+		for (int i = 0; i < 1000; i++)
+			coords.add(i, -i);
+		assertEquals(1000, coords.size());
+		assertEquals(999, coords.getLatitude(999), 0);
+		assertEquals(-500, coords.getLongitude(500), 0);
+
+		coords.clear();
+		assertEquals(0, coords.size());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void test_index_beyond_size() {
+		PackedCoordinates coords = new PackedCoordinates(16);
+		coords.add(50, 7);
+		coords.getLatitude(1);
+	}
+
+	@Test
+	public void test_list_view() {
+		PackedCoordinates coords = new PackedCoordinates();
+		List<LatLon> list = coords.asList();
+		assertEquals(0, list.size());
+
+		// a view: later additions are visible
+		coords.add(50, 7);
+		coords.add(51, 8);
+		assertEquals(2, list.size());
+		assertEquals(51, list.get(1).getLatitude(), 0);
+		assertEquals(8, list.get(1).getLongitude(), 0);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void test_list_view_is_read_only() {
+		new PackedCoordinates().asList().add(new LatLonImpl(50, 7));
+	}
+
+	@Test
+	public void test_array_constructor() {
+		double[] latitudes = { 50, 51, 52 };
+		double[] longitudes = { 7, 8, 9 };
+		PackedCoordinates coords = new PackedCoordinates(latitudes, longitudes);
+		assertEquals(3, coords.size());
+		assertSame(latitudes, coords.latitudes());
+		assertEquals(9, coords.getLongitude(2), 0);
+
+		// grows beyond the given arrays without touching them
+		coords.add(53, 10);
+		assertEquals(4, coords.size());
+		assertEquals(3, latitudes.length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_array_constructor_length_mismatch() {
+		new PackedCoordinates(new double[2], new double[3]);
+	}
+
+	@Test
+	public void test_modifications_invalidate_path_caches() {
+		PackedCoordinates coords = new PackedCoordinates();
+		coords.add(50, 7);
+		coords.add(50.1, 7.1);
+		StaticPath path = new StaticPath(coords);
+		SimplifiedPath simplified = path.simplify(0);
+		assertSame(simplified, path.simplify(0));
+
+		coords.add(50.2, 7.2);
+		assertNotEquals(simplified, path.simplify(0));
+		assertEquals(3, path.simplify(0).size());
+
+		StaticMap map = new StaticMap(400, 200, "key");
+		map.addPath(path);
+		String url = map.toString();
+		// same size as before, but different coordinates
+		coords.clear();
+		coords.add(40, 7);
+		coords.add(40.1, 7.1);
+		coords.add(40.2, 7.2);
+		assertNotEquals(url, map.toString());
+	}
+}
@@ -0,0 +1,110 @@
+package de.pentabyte.googlemaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PathSimplifierTest {
+	/**
+	 * 51 points going east, then 50 points going north. Only the corner (index
+	 * 50) matters.
+	 */
+	private static final int COUNT = 101;
+	private final double[] latitudes = new double[COUNT];
+	private final double[] longitudes = new double[COUNT];
+
+	public PathSimplifierTest() {
+		for (int i = 0; i < COUNT; i++) {
+			latitudes[i] = 50 + Math.max(0, i - 50) * 0.0001;
+			longitudes[i] = 7 + Math.min(i, 50) * 0.0001;
+		}
+	}
+
+	@Test
+	public void test_douglas_peucker_keeps_corner() {
+		int[] ranking = new DouglasPeuckerSimplifier().rank(latitudes, longitudes, COUNT, 1);
+		assertArrayEquals(new int[] { 0, 100, 50 }, ranking);
+	}
+
+	@Test
+	public void test_visvalingam_whyatt_keeps_corner() {
+		int[] ranking = new VisvalingamWhyattSimplifier().rank(latitudes, longitudes, COUNT, 1);
+		assertArrayEquals(new int[] { 0, 100, 50 }, ranking);
+	}
+
+	@Test
+	public void test_corner_ranked_first_without_tolerance() {
+		assertEquals(50, new DouglasPeuckerSimplifier().rank(latitudes, longitudes, COUNT, 0)[2]);
+		assertEquals(50, new VisvalingamWhyattSimplifier().rank(latitudes, longitudes, COUNT, 0)[2]);
+	}
+
+	@Test
+	public void test_distance_filter() {
+		// steps of 0.0001 degrees are about 7 m going east and 11 m going north
+		double[] keptLatitudes = new double[COUNT];
+		double[] keptLongitudes = new double[COUNT];
+		assertEquals(COUNT,
+				DistanceKernels.filterByDistance(latitudes, longitudes, COUNT, 5, keptLatitudes, keptLongitudes));
+		assertEquals(26 + 50,
+				DistanceKernels.filterByDistance(latitudes, longitudes, COUNT, 8, keptLatitudes, keptLongitudes));
+		assertEquals(7.0002, keptLongitudes[1], 1e-9);
+
+		// the last point is kept, even if it is close to the one kept before
+		for (double minDistance : new double[] { 20, 1000 }) {
+			int kept = DistanceKernels.filterByDistance(latitudes, longitudes, COUNT, minDistance, keptLatitudes,
+					keptLongitudes);
+			assertEquals(latitudes[COUNT - 1], keptLatitudes[kept - 1], 0);
+			assertEquals(longitudes[COUNT - 1], keptLongitudes[kept - 1], 0);
+		}
+		assertEquals(2, DistanceKernels.filterByDistance(latitudes, longitudes, COUNT, 1000, keptLatitudes,
+				keptLongitudes));
+
+		// crossing the prime meridian and the antimeridian: 111 m each
+		double[] lats = { 0, 0, 0, 0 };
+		double[] lons = { -0.0005, 0.0005, 179.9995, -179.9995 };
+		assertEquals(4, DistanceKernels.filterByDistance(lats, lons, 4, 100, lats.clone(), lons.clone()));
+		assertEquals(111.2, StaticPath.distanceApproximate(0, -0.0005, 0, 0.0005), 0.1);
+		assertEquals(111.2, StaticPath.distanceApproximate(0, 179.9995, 0, -179.9995), 0.1);
+	}
+
+	@Test
+	public void test_encoding_keeps_path_order() throws IOException {
+		// ranked far beyond 64 points, out of order
+		int[] ranking = new int[COUNT];
+		for (int i = 0; i < COUNT; i++)
+			ranking[i] = i * 37 % COUNT;
+		SimplifiedPath simplified = new SimplifiedPath(latitudes, longitudes, COUNT, ranking);
+		RenderScratch scratch = new RenderScratch();
+		for (int points : new int[] { 1, 2, 64, 65, COUNT }) {
+			int[] kept = Arrays.copyOf(ranking, points);
+			Arrays.sort(kept);
+			PolylineEncoder expected = new PolylineEncoder();
+			for (int index : kept)
+				expected.add(latitudes[index], longitudes[index]);
+
+			StringBuilder actual = new StringBuilder();
+			simplified.encodeTo(actual, points, scratch);
+			assertEquals(expected.toString(), actual.toString());
+		}
+	}
+
+	@Test
+	public void test_bounds_of_all_sources() {
+		PackedCoordinates packed = new PackedCoordinates(latitudes, longitudes);
+		PolylineEncoder encoder = new PolylineEncoder();
+		encoder.encode(latitudes, longitudes, 0, COUNT);
+		for (StaticPath path : new StaticPath[] { new StaticPath(packed), new StaticPath(packed.asList()),
+				new StaticPath(encoder.toString()) }) {
+			BoundingBox bounds = path.getBounds();
+			assertEquals(50, bounds.getLatMin(), 1e-9);
+			assertEquals(50.005, bounds.getLatMax(), 1e-9);
+			assertEquals(7, bounds.getLonMin(), 1e-9);
+			assertEquals(7.005, bounds.getLonMax(), 1e-9);
+			assertEquals(COUNT, path.getPackedCoords().size());
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package de.pentabyte.googlemaps;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PolylineDecoderTest {
+	/**
+	 * Example from Google's polyline algorithm documentation.
+	 */
+	private static final String POLYLINE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+
+	@Test
+	public void test_decode() {
+		PackedCoordinates coords = PolylineDecoder.decode(POLYLINE);
+		assertEquals(3, coords.size());
+		assertEquals(38.5, coords.getLatitude(0), 1e-9);
+		assertEquals(-120.2, coords.getLongitude(0), 1e-9);
+		assertEquals(40.7, coords.getLatitude(1), 1e-9);
+		assertEquals(-120.95, coords.getLongitude(1), 1e-9);
+		assertEquals(43.252, coords.getLatitude(2), 1e-9);
+		assertEquals(-126.453, coords.getLongitude(2), 1e-9);
+	}
+
+	@Test
+	public void test_round_trip() {
+		PackedCoordinates coords = PolylineDecoder.decode(POLYLINE);
+		PolylineEncoder encoder = new PolylineEncoder();
+		encoder.encode(coords.latitudes(), coords.longitudes(), 0, coords.size());
+		assertEquals(POLYLINE, encoder.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_truncated_polyline() {
+		PolylineDecoder.decode("_p~iF~ps|U_ulL");
+	}
+}
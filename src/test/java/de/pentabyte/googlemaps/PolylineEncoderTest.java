@@ -0,0 +1,99 @@
+package de.pentabyte.googlemaps;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PolylineEncoderTest {
+	/**
+	 * Example from Google's polyline algorithm documentation.
+	 */
+	private static final String POLYLINE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+	private static final double[] LATITUDES = { 38.5, 40.7, 43.252 };
+	private static final double[] LONGITUDES = { -120.2, -120.95, -126.453 };
+
+	@Test
+	public void test_reuse_after_reset() {
+		PolylineEncoder encoder = new PolylineEncoder();
+		encoder.encode(LATITUDES, LONGITUDES, 0, 3);
+		assertEquals(POLYLINE, encoder.toString());
+
+		encoder.reset();
+		assertEquals(0, encoder.length());
+		assertEquals("", encoder.toString());
+
+		// no deltas left over from the previous polyline
+		encoder.encode(LATITUDES, LONGITUDES, 0, 3);
+		assertEquals(POLYLINE, encoder.toString());
+		encoder.reset();
+		encoder.encode(LATITUDES, LONGITUDES, 1, 3);
+		assertEquals(encode(40.7, -120.95, 43.252, -126.453), encoder.toString());
+	}
+
+	@Test
+	public void test_e5_input() {
+		int[] latitudes = new int[3];
+		int[] longitudes = new int[3];
+		for (int i = 0; i < 3; i++) {
+			latitudes[i] = PolylineEncoder.toE5(LATITUDES[i]);
+			longitudes[i] = PolylineEncoder.toE5(LONGITUDES[i]);
+		}
+		PolylineEncoder encoder = new PolylineEncoder();
+		encoder.encode(latitudes, longitudes, 0, 3);
+		assertEquals(POLYLINE, encoder.toString());
+	}
+
+	@Test
+	public void test_indices() {
+		PolylineEncoder encoder = new PolylineEncoder();
+		encoder.encode(LATITUDES, LONGITUDES, new int[] { 0, 2, 1 }, 2);
+		assertEquals(encode(38.5, -120.2, 43.252, -126.453), encoder.toString());
+	}
+
+	@Test
+	public void test_bulk_matches_single_points() {
+		// long enough to grow the buffer, with large and negative deltas
+		int count = 1000;
+		double[] latitudes = new double[count];
+		double[] longitudes = new double[count];
+		PolylineEncoder single = new PolylineEncoder();
+		for (int i = 0; i < count; i++) {
+			latitudes[i] = 80 * Math.sin(i * 0.7);
+			longitudes[i] = 179.99999 * Math.cos(i * 1.3);
+			single.add(latitudes[i], longitudes[i]);
+		}
+		PolylineEncoder bulk = new PolylineEncoder();
+		bulk.encode(latitudes, longitudes, 0, count);
+		assertEquals(single.toString(), bulk.toString());
+	}
+
+	@Test
+	public void test_output() throws IOException {
+		PolylineEncoder encoder = new PolylineEncoder();
+		encoder.encode(LATITUDES, LONGITUDES, 0, 3);
+
+		char[] chars = new char[POLYLINE.length() + 2];
+		Arrays.fill(chars, '#');
+		assertEquals(POLYLINE.length(), encoder.getChars(chars, 1));
+		assertEquals("#" + POLYLINE + "#", new String(chars));
+
+		StringBuilder builder = new StringBuilder("enc:");
+		encoder.writeTo((Appendable) builder);
+		assertEquals("enc:" + POLYLINE, builder.toString());
+
+		StringWriter writer = new StringWriter();
+		encoder.writeTo(writer);
+		assertEquals(POLYLINE, writer.toString());
+	}
+
+	private static String encode(double... coordinates) {
+		PolylineEncoder encoder = new PolylineEncoder();
+		for (int i = 0; i < coordinates.length; i += 2)
+			encoder.add(coordinates[i], coordinates[i + 1]);
+		return encoder.toString();
+	}
+}
@@ -0,0 +1,142 @@
+package de.pentabyte.googlemaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs {@link StaticMapFetcher} against a local stub server.
+ */
+public class StaticMapFetcherTest {
+	private static final byte[] IMAGE = new byte[100_000];
+
+	static {
+		for (int i = 0; i < IMAGE.length; i++)
+			IMAGE[i] = (byte) i;
+	}
+
+	private HttpServer server;
+	private String url;
+	/**
+	 * status codes to be answered before the image is delivered
+	 */
+	private final Deque<Integer> failures = new ConcurrentLinkedDeque<>();
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", this::handle);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/maps/api/staticmap?size=10x10&key=secret";
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		try {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			Thread.sleep(20);
+			inFlight.decrementAndGet();
+			Integer failure = failures.poll();
+			if (failure != null) {
+				exchange.getResponseHeaders().add("Retry-After", "0");
+				exchange.sendResponseHeaders(failure, -1);
+			} else {
+				exchange.sendResponseHeaders(200, IMAGE.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(IMAGE);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private StaticMapFetcher fetcher(int maxConcurrency) {
+		StaticMapFetcher fetcher = new StaticMapFetcher(maxConcurrency);
+		fetcher.setBackoffMillis(10);
+		return fetcher;
+	}
+
+	@Test
+	public void test_fetch_to_file() throws IOException {
+		Path target = Files.createTempFile("staticmap", ".png");
+		try {
+			try (OutputStream out = Files.newOutputStream(target)) {
+				fetcher(1).fetch(url, out);
+			}
+			assertArrayEquals(IMAGE, Files.readAllBytes(target));
+		} finally {
+			Files.delete(target);
+		}
+	}
+
+	@Test
+	public void test_retry() throws IOException {
+		failures.add(503);
+		failures.add(429);
+		assertArrayEquals(IMAGE, fetcher(1).fetch(url));
+		assertEquals(3, requests.get());
+	}
+
+	@Test
+	public void test_no_retry_on_client_error() throws IOException {
+		failures.add(403);
+		try {
+			fetcher(1).fetch(url);
+			fail();
+		} catch (StaticMapFetchException e) {
+			assertEquals(403, e.getStatusCode());
+			assertTrue(e.getMessage().contains("key=*****"));
+		}
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void test_bounded_concurrency() throws Exception {
+		StaticMapFetcher fetcher = fetcher(2);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			Future<?>[] results = new Future<?>[16];
+			for (int i = 0; i < results.length; i++)
+				results[i] = executor.submit(() -> fetcher.fetch(url));
+			for (Future<?> result : results)
+				assertArrayEquals(IMAGE, (byte[]) result.get());
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		assertTrue(maxInFlight.get() <= 2);
+	}
+}
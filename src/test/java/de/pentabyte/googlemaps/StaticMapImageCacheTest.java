@@ -0,0 +1,253 @@
+package de.pentabyte.googlemaps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StaticMapImageCacheTest {
+	/**
+	 * Answers every URL with the URL itself, without any network access.
+	 */
+	private static class StubFetcher extends StaticMapFetcher {
+		final AtomicInteger requests = new AtomicInteger();
+
+		@Override
+		public void fetch(String url, OutputStream out) throws IOException {
+			requests.incrementAndGet();
+			out.write(url.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static class MutableClock extends Clock {
+		long millis = 1_000_000;
+
+		@Override
+		public long millis() {
+			return millis;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+	}
+
+	private StubFetcher fetcher = new StubFetcher();
+	private Path directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("staticmaps");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator)
+				Files.delete(file);
+		}
+		Files.delete(directory);
+	}
+
+	private static StaticMap map(String key, double latitude) {
+		StaticMap map = new StaticMap(100, 100, key);
+		map.addMarker(new StaticMarker(latitude, 7));
+		return map;
+	}
+
+	@Test
+	public void test_key_ignores_credentials() {
+		String url = map("first", 50).toString();
+		assertEquals(StaticMapImageCache.key(url), StaticMapImageCache.key(map("second", 50).toString()));
+		assertEquals(StaticMapImageCache.key(url), StaticMapImageCache.key(url + "&signature=abc"));
+		assertNotEquals(StaticMapImageCache.key(url), StaticMapImageCache.key(map("first", 51).toString()));
+	}
+
+	@Test
+	public void test_heap_tier() throws IOException {
+		MutableClock clock = new MutableClock();
+		byte[] image = fetcher.fetch(map("key", 50));
+		StaticMapImageCache cache = StaticMapImageCache.builder(fetcher).maxHeapBytes(image.length * 2)
+				.ttl(1, TimeUnit.MINUTES).clock(clock).build();
+
+		assertArrayEquals(image, cache.get(map("key", 50)));
+		assertArrayEquals(image, cache.get(map("other key", 50)));
+		assertEquals(1, cache.getHeapHits());
+		assertEquals(1, cache.getMisses());
+
+		// evicts the least recently used image
+		cache.get(map("key", 51));
+		cache.get(map("key", 50));
+		cache.get(map("key", 52));
+		assertEquals(1, cache.getEvictions());
+		cache.get(map("key", 50));
+		assertEquals(3, cache.getHeapHits());
+		assertEquals(2 * image.length, cache.getHeapBytes());
+
+		clock.millis += TimeUnit.MINUTES.toMillis(1);
+		cache.get(map("key", 50));
+		assertEquals(4, cache.getMisses());
+	}
+
+	@Test
+	public void test_disk_tier() throws IOException {
+		byte[] image = fetcher.fetch(map("key", 50));
+		StaticMapImageCache cache = StaticMapImageCache.builder(fetcher).maxHeapBytes(0)
+				.disk(directory, image.length * 2).build();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		cache.writeTo(map("key", 50), out);
+		assertArrayEquals(image, out.toByteArray());
+		assertArrayEquals(image, cache.get(map("key", 50)));
+		assertEquals(1, cache.getDiskHits());
+
+		// a new cache finds the images of the previous one
+		cache.get(map("key", 51));
+		cache = StaticMapImageCache.builder(fetcher).disk(directory, image.length * 2).build();
+		assertEquals(2 * image.length, cache.getDiskBytes());
+		out.reset();
+		cache.writeTo(map("key", 50), out);
+		assertArrayEquals(image, out.toByteArray());
+		assertEquals(1, cache.getDiskHits());
+		assertEquals(0, cache.getMisses());
+
+		cache.get(map("key", 52));
+		assertEquals(1, cache.getEvictions());
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(2, files.count());
+		}
+		assertEquals(4, fetcher.requests.get());
+	}
+
+	@Test
+	public void test_concurrent_requests_share_one_download() throws Exception {
+		CountDownLatch released = new CountDownLatch(1);
+		fetcher = new StubFetcher() {
+			@Override
+			public void fetch(String url, OutputStream out) throws IOException {
+				try {
+					released.await();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				super.fetch(url, out);
+			}
+		};
+		StaticMapImageCache cache = StaticMapImageCache.builder(fetcher).build();
+		int threads = 16;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<byte[]>> images = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				String key = "key" + i;
+				images.add(executor.submit(() -> cache.get(map(key, 50))));
+			}
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (cache.getCoalesced() < threads - 1 && System.currentTimeMillis() < deadline)
+				Thread.sleep(1);
+			released.countDown();
+
+			for (Future<byte[]> image : images)
+				assertArrayEquals(images.get(0).get(), image.get());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, fetcher.requests.get());
+		assertEquals(1, cache.getMisses());
+		assertEquals(threads - 1, cache.getCoalesced());
+	}
+
+	@Test
+	public void test_image_larger_than_disk_tier() throws IOException {
+		byte[] image = fetcher.fetch(map("key", 50));
+		StaticMapImageCache cache = StaticMapImageCache.builder(fetcher).maxHeapBytes(0).disk(directory, 10).build();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		cache.writeTo(map("key", 50), out);
+		assertArrayEquals(image, out.toByteArray());
+		assertArrayEquals(image, cache.get(map("key", 50)));
+		assertEquals(0, cache.getDiskBytes());
+		assertEquals(2, cache.getMisses());
+		assertEquals(3, fetcher.requests.get());
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(0, files.count());
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void test_concurrent_transfers_larger_than_disk_tier() throws Exception {
+		CountDownLatch released = new CountDownLatch(1);
+		fetcher = new StubFetcher() {
+			@Override
+			public void fetch(String url, OutputStream out) throws IOException {
+				try {
+					released.await();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				super.fetch(url, out);
+			}
+		};
+		StaticMapImageCache cache = StaticMapImageCache.builder(fetcher).maxHeapBytes(0).disk(directory, 10).build();
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<byte[]>> images = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				images.add(executor.submit(() -> {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					cache.writeTo(map("key", 50), out);
+					return out.toByteArray();
+				}));
+			}
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (cache.getCoalesced() < threads - 1 && System.currentTimeMillis() < deadline)
+				Thread.sleep(1);
+			released.countDown();
+
+			byte[] image = fetcher.fetch(map("key", 50));
+			for (Future<byte[]> transferred : images)
+				assertArrayEquals(image, transferred.get());
+		} finally {
+			executor.shutdown();
+		}
+		// one download for all transfers, one for the expected image
+		assertEquals(2, fetcher.requests.get());
+		assertEquals(0, cache.getDiskBytes());
+	}
+}
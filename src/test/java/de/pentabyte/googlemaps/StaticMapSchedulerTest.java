@@ -0,0 +1,102 @@
+package de.pentabyte.googlemaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import de.pentabyte.googlemaps.StaticMapScheduler.Priority;
+
+public class StaticMapSchedulerTest {
+	/**
+	 * Answers every URL with the URL itself and records the order.
+	 */
+	private final List<String> fetched = new CopyOnWriteArrayList<>();
+	private final StaticMapFetcher fetcher = new StaticMapFetcher() {
+		@Override
+		public void fetch(String url, OutputStream out) throws IOException {
+			fetched.add(url);
+			out.write(url.getBytes(StandardCharsets.UTF_8));
+		}
+	};
+
+	private static StaticMap map(String name) {
+		StaticMap map = new StaticMap(100, 100, "key");
+		map.addMarker(new StaticMarker(name));
+		return map;
+	}
+
+	@Test
+	public void test_rate_limit() throws Exception {
+		try (StaticMapScheduler scheduler = StaticMapScheduler.builder(fetcher, 20).burst(1).build()) {
+			long start = System.nanoTime();
+			List<CompletableFuture<byte[]>> images = new ArrayList<>();
+			for (int i = 0; i < 6; i++)
+				images.add(scheduler.submit(map("m" + i), Priority.BATCH));
+			for (CompletableFuture<byte[]> image : images)
+				image.get(5, TimeUnit.SECONDS);
+			// 5 intervals of 50 ms after the first request
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(240));
+			assertEquals(6, scheduler.getDispatched(Priority.BATCH));
+			assertTrue(scheduler.getMaxWaitMillis(Priority.BATCH) >= 200);
+		}
+	}
+
+	@Test
+	public void test_interactive_first() throws Exception {
+		try (StaticMapScheduler scheduler = StaticMapScheduler.builder(fetcher, 5).burst(1).build()) {
+			// takes the only token, the next one comes in 200 ms
+			scheduler.submit(map("batch0"), Priority.BATCH).get(5, TimeUnit.SECONDS);
+			CompletableFuture<byte[]> batch1 = scheduler.submit(map("batch1"), Priority.BATCH);
+			CompletableFuture<byte[]> batch2 = scheduler.submit(map("batch2"), Priority.BATCH);
+			CompletableFuture<byte[]> interactive = scheduler.submit(map("interactive"), Priority.INTERACTIVE);
+			assertEquals(2, scheduler.getQueueDepth(Priority.BATCH));
+
+			CompletableFuture.allOf(batch1, batch2, interactive).get(5, TimeUnit.SECONDS);
+			assertTrue(fetched.get(1).contains("interactive"));
+			assertTrue(fetched.get(3).contains("batch2"));
+		}
+	}
+
+	@Test
+	public void test_rejection_and_shedding() throws Exception {
+		try (StaticMapScheduler scheduler = StaticMapScheduler.builder(fetcher, 1).burst(1)
+				.maxQueued(Priority.BATCH, 1).build()) {
+			scheduler.submit(map("first"), Priority.BATCH).get(5, TimeUnit.SECONDS);
+			CompletableFuture<byte[]> late = scheduler.submit(map("late"), Priority.BATCH, 50,
+					TimeUnit.MILLISECONDS);
+			CompletableFuture<byte[]> full = scheduler.submit(map("full"), Priority.BATCH);
+			assertFailure(RejectedExecutionException.class, full);
+			long start = System.nanoTime();
+			assertFailure(TimeoutException.class, late);
+			// shed on time, not when the next token is available
+			assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+			assertEquals(1, scheduler.getRejected(Priority.BATCH));
+			assertEquals(1, scheduler.getShed(Priority.BATCH));
+			assertEquals(1, fetched.size());
+		}
+	}
+
+	private static void assertFailure(Class<? extends Throwable> expected, CompletableFuture<byte[]> image)
+			throws Exception {
+		try {
+			image.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals(expected, e.getCause().getClass());
+		}
+	}
+}
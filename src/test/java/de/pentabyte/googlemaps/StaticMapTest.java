@@ -1,8 +1,408 @@
 package de.pentabyte.googlemaps;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.junit.Test;
 
+import de.pentabyte.googlemaps.StaticMap.Maptype;
+
 public class StaticMapTest {
+	@Test
+	public void test_url_encoding() {
+		StaticMap map = new StaticMap(400, 200, "key");
+		map.addMarker(new StaticMarker("München Hbf"));
+		StaticMarker marker = new StaticMarker(48.853000, 2.349983);
+		marker.setLabel('N');
+		marker.setCustomIconUrl("http://cableparks.info/poi.png");
+		map.addMarker(marker);
+
+		assertEquals("https://maps.googleapis.com/maps/api/staticmap?size=400x200" //
+				+ "&markers=M%C3%BCnchen+Hbf" //
+				+ "&markers=label:N|icon:http:%2F%2Fcableparks.info%2Fpoi.png|48.853,2.349983" //
+				+ "&key=key", map.toString());
+	}
+
+	@Test
+	public void test_coordinates_formatted_lazily() throws IOException {
+		Location location = new Location(48.8530004, -2.349983);
+		assertEquals(48.8530004, location.latitude(), 0);
+		assertEquals("48.853,-2.349983", location.toString());
+
+		StringBuilder url = new StringBuilder();
+		location.writeTo(new QueryEncoder(url, "").parameter("center"));
+		assertEquals("?center=48.853,-2.349983", url.toString());
+
+		StaticMarker marker = new StaticMarker(50, 7);
+		marker.setLabel('A');
+		assertEquals("50,7", marker.query());
+	}
+
+	@Test
+	public void test_template() {
+		StaticMapTemplate template = StaticMapTemplate.builder(400, 200, "key") //
+				.maptype(Maptype.hybrid) //
+				.scale(2) //
+				.language(Locale.GERMANY) //
+				.build();
+
+		StaticMap map = template.newMap();
+		map.setCenter(new Location("Köln"), 12);
+		assertEquals("https://maps.googleapis.com/maps/api/staticmap?size=400x200&scale=2&maptype=hybrid" //
+				+ "&center=K%C3%B6ln&zoom=12&key=key&language=de", map.toString());
+
+		map.setMaptype(Maptype.terrain);
+		assertEquals("https://maps.googleapis.com/maps/api/staticmap?size=400x200" //
+				+ "&center=K%C3%B6ln&zoom=12&scale=2&maptype=terrain&key=key&language=de", map.toString());
+	}
+
+	@Test
+	public void test_markers_grouped_by_style() {
+		StaticMap map = new StaticMap(400, 200, "key");
+		for (int i = 0; i < 3; i++) {
+			StaticMarker marker = new StaticMarker(50, i);
+			marker.setColor(Color.blue);
+			map.addMarker(marker);
+			map.addMarker(new StaticMarker(51, i));
+		}
+		assertEquals("https://maps.googleapis.com/maps/api/staticmap?size=400x200" //
+				+ "&markers=color:blue|50,0|50,1|50,2" //
+				+ "&markers=51,0|51,1|51,2&key=key", map.toString());
+
+		map.setCanonical(true);
+		assertEquals("https://maps.googleapis.com/maps/api/staticmap?size=400x200" //
+				+ "&markers=51,0|51,1|51,2" //
+				+ "&markers=color:blue|50,0|50,1|50,2&key=key", map.toString());
+	}
+
+	@Test
+	public void test_marker_clustering() {
+		StaticMap map = new StaticMap(400, 400, "key");
+		StaticMarker isolated = new StaticMarker(50.5, 7.5);
+		isolated.setLabel('I');
+		map.addMarker(isolated);
+		for (int i = 0; i < 2000; i++)
+			map.addMarker(new StaticMarker(50 + (i % 40) * 0.0001, 7 + (i / 40) * 0.0001));
+		assertTrue(map.toString().length() > 20000);
+
+		map.setMarkerClustering(new MarkerClustering());
+		String url = map.toString();
+		assertTrue(url.length() <= map.getMaxUrlLength());
+		assertTrue(url.contains("&markers=label:I|50.5,7.5&"));
+		// the dense block becomes one cluster at its centroid
+		assertTrue(url.contains("&markers=50.00195,7.00245&"));
+
+		// everything fits: no clustering
+		map.setMaxUrlLength(100000);
+		assertEquals(2001, map.toString().split("\\|").length);
+	}
+
+	@Test
+	public void test_canonical() throws IOException {
+		StaticMap map = new StaticMap(400, 200, "key");
+		map.setCanonical(true);
+		map.setMaptype(Maptype.roadmap);
+		StaticMarker marker = new StaticMarker(48.8530004, 2.3499831);
+		marker.setColor(Color.red);
+		marker.setZoom(15);
+		map.addMarker(marker);
+		map.addVisible(new Location(" Notre  Dame"));
+		map.addVisible(new Location("Louvre"));
+		map.addVisible(new Location("Louvre"));
+		map.setZoom(14);
+		assertEquals("https://maps.googleapis.com/maps/api/staticmap?size=400x200&zoom=14" //
+				+ "&markers=48.853,2.349983&visible=Louvre|Notre+Dame&key=key", map.toString());
+
+		StaticMap other = StaticMapTemplate.builder(400, 200, "key").canonical(true).build().newMap();
+		other.setZoom(14);
+		other.addVisible(new Location("Notre Dame"));
+		other.addVisible(new Location("Louvre"));
+		other.addMarker(new StaticMarker(48.853, 2.349983));
+		assertEquals(map.toString(), other.toString());
+
+		assertEquals("-0.000001,-120", location(-0.0000009, -120.0000001));
+		assertEquals("0,0.1", location(-0.0000001, 0.1));
+	}
+
+	@Test
+	public void test_coordinate_decimals() {
+		StaticMap map = new StaticMap(400, 200, "key");
+		map.setCenter(new Location(50.8449435, 6.8569981), 10);
+		assertEquals("https://maps.googleapis.com/maps/api/staticmap?size=400x200" //
+				+ "&center=50.844944,6.856998&zoom=10&key=key", map.toString());
+
+		// a pixel spans 0.0014 degrees at zoom 10
+		map.setCoordinateDecimals(StaticMap.ZOOM_DECIMALS);
+		assertTrue(map.toString().contains("&center=50.8449,6.857&"));
+		map.setScale(2);
+		assertTrue(map.toString().contains("&center=50.84494,6.857&"));
+		map.setZoom(null);
+		assertTrue(map.toString().contains("&center=50.844944,6.856998&"));
+
+		map.setCoordinateDecimals(2);
+		assertTrue(map.toString().contains("&center=50.84,6.86&"));
+
+		// no exponent notation, carry into the integer part
+		assertEquals("0.0001,-0.00001", new Location(0.0001, -0.00001).toString());
+		assertEquals("1,-180", new Location(0.9999999, -179.9999999).toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_coordinate_decimals_limit() {
+		new StaticMap(400, 200, "key").setCoordinateDecimals(7);
+	}
+
+	private static String location(double latitude, double longitude) throws IOException {
+		StringBuilder out = new StringBuilder();
+		new Location(latitude, longitude).writeLocationTo(out, true, CoordinateFormat.MAX_DECIMALS);
+		return out.toString();
+	}
+
+	@Test
+	public void test_batch_rendering_keeps_order() {
+		List<StaticMap> maps = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			StaticMap map = new StaticMap(400, 200, "key");
+			map.addPath(new StaticPath(spiral(100 * i + 2, 0.01)));
+			maps.add(map);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<String> urls = new BatchRenderer(executor, 3).render(maps);
+			for (int i = 0; i < maps.size(); i++)
+				assertEquals(maps.get(i).toString(), urls.get(i));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void test_cache_invalidation() {
+		StaticMap map = new StaticMap(400, 200, "key");
+		List<StaticMarker> markers = new ArrayList<>();
+		StaticMarker marker = new StaticMarker(48.853000, 2.349983);
+		markers.add(marker);
+		map.setMarkers(markers);
+		String url = map.toString();
+		assertSame(url, map.toString());
+
+		marker.setColor(Color.red);
+		assertNotEquals(url, url = map.toString());
+
+		markers.add(new StaticMarker("Paris"));
+		assertNotEquals(url, url = map.toString());
+
+		markers.set(1, new StaticMarker("Berlin"));
+		assertNotEquals(url, url = map.toString());
+
+		PackedCoordinates coords = new PackedCoordinates();
+		coords.add(48.8, 2.3);
+		coords.add(48.9, 2.4);
+		map.addPath(new StaticPath(coords));
+		assertNotEquals(url, url = map.toString());
+
+		coords.add(49, 2.5);
+		assertNotEquals(url, url = map.toString());
+		assertSame(url, map.toString());
+	}
+
+	@Test
+	public void test_write_to() throws IOException {
+		StaticMap map = new StaticMap(400, 200, "key");
+		map.addMarker(new StaticMarker(48.853, 2.349983));
+		map.addPath(new StaticPath(spiral(1000, 0.01)));
+
+		// not rendered yet: streamed
+		StringWriter streamed = new StringWriter();
+		map.writeTo(streamed);
+		StringBuilder buffer = new StringBuilder("url: ");
+		map.writeTo(buffer);
+
+		String url = map.toString();
+		assertEquals(url, streamed.toString());
+		assertEquals("url: " + url, buffer.toString());
+
+		// rendered: cached
+		streamed = new StringWriter();
+		map.writeTo(streamed);
+		assertEquals(url, streamed.toString());
+		map.setZoom(10);
+		streamed = new StringWriter();
+		map.writeTo(streamed);
+		assertEquals(map.toString(), streamed.toString());
+		assertNotEquals(url, streamed.toString());
+	}
+
+	@Test
+	public void test_viewport() {
+		StaticMap map = new StaticMap(400, 200, "key");
+		assertNull(map.getViewport());
+
+		// 0.35 degrees of longitude: 255 points at zoom 10
+		map.addMarker(new StaticMarker(50.9, 6.8));
+		map.addMarker(new StaticMarker(51.0, 7.15));
+		Viewport viewport = map.getViewport();
+		assertEquals(10, viewport.getZoom());
+		assertEquals(6.975, viewport.getCenterLongitude(), 1e-9);
+		assertEquals(50.95, viewport.getCenterLatitude(), 0.001);
+		assertEquals(96.3, viewport.getMetersPerPoint(), 0.1);
+
+		map.setScale(2);
+		map.setCenter(new Location(0, 0), 1);
+		viewport = map.getViewport();
+		assertEquals(0, viewport.getCenterLatitude(), 0);
+		assertEquals(2 * Math.PI * StaticPath.EARTH_RADIUS / 512 / 2, viewport.getMetersPerPixel(), 1e-6);
+	}
+
+	@Test
+	public void test_deserialize_2_3_0() throws IOException, ClassNotFoundException {
+		// a coordinate and a query, serialized by version 2.3.0
+		List<Location> visibles;
+		try (ObjectInputStream in = new ObjectInputStream(getClass().getResourceAsStream("/locations-2.3.0.ser"))) {
+			@SuppressWarnings("unchecked")
+			List<Location> read = (List<Location>) in.readObject();
+			visibles = read;
+		}
+		StaticMap map = new StaticMap(400, 200, "key");
+		map.setVisibles(visibles);
+		// not at 0,0
+		assertNull(map.getViewport());
+		assertEquals("https://maps.googleapis.com/maps/api/staticmap?size=400x200&visible=50.5,7.25|K%C3%B6ln&key=key",
+				map.toString());
+	}
+
+	@Test
+	public void test_malformed_polyline() {
+		// unterminated number
+		StaticPath path = new StaticPath("_p~iF~ps|U_");
+		path.setColor(Color.red);
+		StaticMap map = new StaticMap(400, 200, "key");
+		map.addPath(path);
+		assertEquals("https://maps.googleapis.com/maps/api/staticmap?size=400x200&path=color:red|enc:_p~iF~ps|U_&key=key",
+				map.toString());
+		assertNull(map.getViewport());
+	}
+
+	@Test
+	public void test_viewport_across_antimeridian() {
+		// Fiji, 0.2 degrees wide
+		List<LatLon> coords = new ArrayList<>();
+		coords.add(new LatLonImpl(-16.8, 179.9));
+		coords.add(new LatLonImpl(-16.85, 179.95));
+		coords.add(new LatLonImpl(-16.8, -179.9));
+		StaticMap map = new StaticMap(400, 200, "key");
+		map.addPath(new StaticPath(coords));
+
+		Viewport viewport = map.getViewport();
+		assertEquals(11, viewport.getZoom());
+		assertEquals(180, Math.abs(viewport.getCenterLongitude()), 1e-9);
+		// not simplified away
+		PolylineEncoder encoder = new PolylineEncoder();
+		for (LatLon coord : coords)
+			encoder.add(coord.getLatitude(), coord.getLongitude());
+		assertTrue(map.toString().contains("&path=enc:" + encoder + "&"));
+	}
+
+	@Test
+	public void test_paths_fit_url_length() {
+		StaticMap map = new StaticMap(400, 200, "key");
+		map.setMaxUrlLength(1000);
+		map.addPath(new StaticPath(spiral(10000, 0.1)));
+		map.addPath(new StaticPath(spiral(10000, 0.01)));
+		map.addPath(new StaticPath(spiral(3, 0.01)));
+		PolylineEncoder encoder = new PolylineEncoder();
+		for (LatLon coord : spiral(10000, 0.05))
+			encoder.add(coord.getLatitude(), coord.getLongitude());
+		map.addPath(new StaticPath(encoder.toString()));
+
+		String url = map.toString();
+		assertTrue(url.length() <= 1000);
+		assertTrue(url.length() > 900);
+	}
+
+	/**
+	 * @return a path around Cologne which is hard to simplify
+	 */
+	private List<LatLon> spiral(int points, double radius) {
+		List<LatLon> coords = new ArrayList<>();
+		for (int i = 0; i < points; i++) {
+			double r = radius * i / points;
+			coords.add(new LatLonImpl(50.9 + r * Math.cos(i / 10.0), 6.9 + r * Math.sin(i / 10.0)));
+		}
+		return coords;
+	}
+
+	@Test(timeout = 10000)
+	public void test_incremental_validation() {
+		StaticMap map = new StaticMap(400, 200, "key");
+		for (int i = 0; i < 100000; i++)
+			map.addMarker(new StaticMarker(50, 7));
+		map.addVisible(new Location("Köln"));
+		assertEquals(1, map.getGeocodedLocations());
+		assertTrue(map.getEstimatedLength() > 100000 * "&markers=50,7".length());
+		assertEquals(1, map.getViolations().size());
+
+		// counters follow lists which have been replaced or modified directly
+		List<StaticMarker> markers = new ArrayList<>();
+		markers.add(new StaticMarker("Bonn"));
+		map.setMarkers(markers);
+		assertEquals(2, map.getGeocodedLocations());
+		assertTrue(map.getViolations().isEmpty());
+		markers.add(new StaticMarker("Aachen"));
+		assertEquals(3, map.getGeocodedLocations());
+		// an upper bound: markers without style share one parameter
+		assertTrue(map.getEstimatedLength() >= map.toString().length());
+
+		for (int i = 0; i < 14; i++)
+			markers.add(new StaticMarker("Düsseldorf"));
+		assertEquals(1, map.getViolations().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_incremental_validation_replaced() {
+		StaticMap map = new StaticMap(400, 200, "key");
+		for (int i = 0; i < 15; i++)
+			map.addMarker(new StaticMarker(50, 7));
+		assertEquals(0, map.getGeocodedLocations());
+
+		// same size, different elements
+		for (int i = 0; i < 15; i++)
+			map.getMarkers().set(i, new StaticMarker("Köln"));
+		assertEquals(15, map.getGeocodedLocations());
+		map.addMarker(new StaticMarker("Bonn"));
+	}
+
+	@Test
+	public void test_incremental_validation_restyled() {
+		StaticMap map = new StaticMap(400, 200, "key");
+		StaticMarker marker = new StaticMarker(50, 7);
+		map.addMarker(marker);
+		int length = map.getEstimatedLength();
+		marker.setLabel('A');
+		assertEquals(length + "label:A|".length(), map.getEstimatedLength());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_geocode_maximum_for_lists() {
+		StaticMap map = new StaticMap(400, 200, null);
+		add15Markers(map);
+		List<Location> visibles = new ArrayList<>();
+		visibles.add(new Location("Frankfurt"));
+		map.setVisibles(visibles);
+	}
+
 	@Test
 	public void test_geocode_below_maximum() {
 		StaticMap map = new StaticMap(400, 200, null);
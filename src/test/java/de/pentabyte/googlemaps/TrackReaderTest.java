@@ -0,0 +1,82 @@
+package de.pentabyte.googlemaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class TrackReaderTest {
+	@Test
+	public void test_gpx() throws IOException {
+		String gpx = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" //
+				+ "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\"><trk><trkseg>\n" //
+				+ "<trkpt lat=\"50.0\" lon=\"7.0\"><ele>60</ele></trkpt>\n" //
+				+ "<trkpt lat=\"50.0\" lon=\"7.001\"/>\n" //
+				+ "<trkpt lat=\"50.0\" lon=\"7.002\"/>\n" //
+				+ "</trkseg><trkseg><trkpt lat=\"50.001\" lon=\"7.002\"/></trkseg></trk></gpx>";
+		StreamingSimplifier simplifier = new StreamingSimplifier(1, 0);
+		TrackReader.readGpx(new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8)), simplifier);
+		assertEquals(4, simplifier.getAdded());
+		// the point between start and corner is redundant
+		assertEquals("[50.0, 7.0][50.0, 7.002][50.001, 7.002]", toString(simplifier.finish()));
+	}
+
+	@Test
+	public void test_csv() throws IOException {
+		String csv = "time;lon;lat\n" //
+				+ "# recorded yesterday\n" //
+				+ "\n" //
+				+ "10:00;7.0;50.0\n" //
+				+ "10:01; 7.1 ;50.1\n";
+		StreamingSimplifier simplifier = new StreamingSimplifier(0, 0);
+		TrackReader.readCsv(new StringReader(csv), 2, 1, ';', simplifier);
+		assertEquals("[50.0, 7.0][50.1, 7.1]", toString(simplifier.finish()));
+	}
+
+	@Test(expected = IOException.class)
+	public void test_csv_invalid() throws IOException {
+		TrackReader.readCsv(new StringReader("50,7\n51;8\n"), new StreamingSimplifier(0, 0));
+	}
+
+	@Test
+	public void test_geojson() throws IOException {
+		String json = "{\"type\":\"FeatureCollection\",\"features\":[" //
+				+ "{\"type\":\"Feature\",\"properties\":{\"name\":\"coordinates [1, 2]\"}," //
+				+ "\"geometry\":{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}}," //
+				+ "{\"type\":\"Feature\",\"geometry\":{\"coordinates\" : [ [7.0, 50.0, 60], [7.1,50.1] ]," //
+				+ "\"type\":\"LineString\"}}," //
+				+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiLineString\"," //
+				+ "\"coordinates\":[[[7.2,50.0],[7.3,50.1]]]}}]}";
+		StreamingSimplifier simplifier = new StreamingSimplifier(0, 0);
+		TrackReader.readGeoJson(new StringReader(json), simplifier);
+		assertEquals("[50.0, 7.0][50.1, 7.1][50.0, 7.2][50.1, 7.3]", toString(simplifier.finish()));
+	}
+
+	@Test
+	public void test_bounded_memory() {
+		// a zigzag no tolerance below 100 m can simplify
+		StreamingSimplifier simplifier = new StreamingSimplifier(1, 1000);
+		int count = 1000000;
+		for (int i = 0; i < count; i++)
+			simplifier.add(50 + (i % 2) * 0.001, 7 + i * 0.00001);
+		assertEquals(count, simplifier.getAdded());
+		assertTrue(simplifier.getToleranceMeters() > 100);
+
+		PackedCoordinates simplified = simplifier.finish();
+		assertTrue(simplified.size() <= 1000);
+		assertEquals(7, simplified.getLongitude(0), 0);
+		assertEquals(7 + (count - 1) * 0.00001, simplified.getLongitude(simplified.size() - 1), 0);
+	}
+
+	private static String toString(PackedCoordinates coords) {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < coords.size(); i++)
+			s.append('[').append(coords.getLatitude(i)).append(", ").append(coords.getLongitude(i)).append(']');
+		return s.toString();
+	}
+}